@@ -3,7 +3,9 @@ package com.mainak.philia.controller;
 import com.mainak.philia.dto.comment.CommentCreateDto;
 import com.mainak.philia.dto.comment.CommentDto;
 import com.mainak.philia.dto.comment.CommentUpdateDto;
+import com.mainak.philia.dto.user.LikersPageDto;
 import com.mainak.philia.dto.user.UserDto;
+import com.mainak.philia.enums.ReactionType;
 import com.mainak.philia.service.CommentService;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
@@ -28,6 +30,14 @@ public class CommentController {
         return commentService.getLikesByCommentId(commentId);
     }
 
+    @GetMapping("/{commentId}/likes/page")
+    public ResponseEntity<LikersPageDto> getLikersPageByCommentId(
+            @PathVariable Long commentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return commentService.getLikersPageByCommentId(commentId, cursor, size);
+    }
+
     @PostMapping("")
     public ResponseEntity<CommentDto> addCommentToPost(@Valid @RequestBody CommentCreateDto dto) {
         return commentService.addCommentToPost(dto);
@@ -40,12 +50,22 @@ public class CommentController {
 
     @PostMapping("/{commentId}/likes/add/{userId}")
     public boolean likeComment(@PathVariable Long commentId, @PathVariable Long userId) {
-        return commentService.likeComment(commentId, userId);
+        return commentService.reactToComment(commentId, userId, ReactionType.LIKE);
     }
 
     @DeleteMapping("/{commentId}/likes/remove/{userId}")
     public boolean removeLikeFromComment(@PathVariable Long commentId, @PathVariable Long userId) {
-        return commentService.removeLikeFromComment(commentId, userId);
+        return commentService.removeReactionFromComment(commentId, userId);
+    }
+
+    @PostMapping("/{commentId}/reactions/add/{userId}")
+    public boolean reactToComment(@PathVariable Long commentId, @PathVariable Long userId, @RequestParam ReactionType type) {
+        return commentService.reactToComment(commentId, userId, type);
+    }
+
+    @DeleteMapping("/{commentId}/reactions/remove/{userId}")
+    public boolean removeReactionFromComment(@PathVariable Long commentId, @PathVariable Long userId) {
+        return commentService.removeReactionFromComment(commentId, userId);
     }
 
     @DeleteMapping("/{commentId}")
@@ -1,14 +1,19 @@
 package com.mainak.philia.controller;
 
+import com.mainak.philia.dto.app.CursorPageDto;
 import com.mainak.philia.dto.comment.CommentDto;
 import com.mainak.philia.dto.post.PostCreateDto;
 import com.mainak.philia.dto.post.PostDto;
 import com.mainak.philia.dto.post.PostUpdateDto;
+import com.mainak.philia.dto.user.LikersPageDto;
 import com.mainak.philia.dto.user.UserDto;
+import com.mainak.philia.enums.ReactionType;
 import com.mainak.philia.service.CommentService;
 import com.mainak.philia.service.PostService;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -27,6 +32,13 @@ public class PostController {
         return postService.getAllPosts();
     }
 
+    @GetMapping("/feed")
+    public ResponseEntity<CursorPageDto<PostDto>> getFeed(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return postService.getFeed(cursor, size);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<PostDto> getPostById(@PathVariable Long id) {
         return postService.getPostById(id);
@@ -37,14 +49,34 @@ public class PostController {
         return commentService.getCommentsByPostId(postId);
     }
 
+    @GetMapping("/{postId}/comments/page")
+    public ResponseEntity<CursorPageDto<CommentDto>> getCommentPageByPostId(
+            @PathVariable Long postId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return commentService.getCommentPageByPostId(postId, cursor, size);
+    }
+
     @GetMapping("/{postId}/likes")
     public ResponseEntity<List<UserDto>> getLikesByPostId(@PathVariable Long postId) {
         return postService.getLikesByPostId(postId);
     }
 
+    @GetMapping("/{postId}/likes/page")
+    public ResponseEntity<LikersPageDto> getLikersPageByPostId(
+            @PathVariable Long postId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return postService.getLikersPageByPostId(postId, cursor, size);
+    }
+
     @GetMapping("/{postId}/image")
-    public ResponseEntity<byte[]> getImageByPostId(@PathVariable Long postId) {
-        return postService.getPostImageById(postId);
+    public ResponseEntity<Resource> getImageByPostId(
+            @PathVariable Long postId,
+            @RequestParam(name = "v", required = false) String version,
+            @RequestParam(name = "size", required = false) Integer size,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return postService.getPostImageById(postId, version, size, ifNoneMatch);
     }
 
     @GetMapping("/trending")
@@ -68,12 +100,22 @@ public class PostController {
 
     @PostMapping("/{postId}/likes/add/{userId}")
     public boolean likePost(@PathVariable Long postId, @PathVariable Long userId) {
-        return postService.likePost(postId, userId);
+        return postService.reactToPost(postId, userId, ReactionType.LIKE);
     }
 
     @DeleteMapping("/{postId}/likes/remove/{userId}")
     public boolean removeLikeFromPost(@PathVariable Long postId, @PathVariable Long userId) {
-        return postService.removeLikeFromPost(postId, userId);
+        return postService.removeReactionFromPost(postId, userId);
+    }
+
+    @PostMapping("/{postId}/reactions/add/{userId}")
+    public boolean reactToPost(@PathVariable Long postId, @PathVariable Long userId, @RequestParam ReactionType type) {
+        return postService.reactToPost(postId, userId, type);
+    }
+
+    @DeleteMapping("/{postId}/reactions/remove/{userId}")
+    public boolean removeReactionFromPost(@PathVariable Long postId, @PathVariable Long userId) {
+        return postService.removeReactionFromPost(postId, userId);
     }
 
     @DeleteMapping("/{id}")
@@ -1,16 +1,21 @@
 package com.mainak.philia.controller;
 
+import com.mainak.philia.dto.app.CursorPageDto;
 import com.mainak.philia.dto.auth.LoginResponseDto;
 import com.mainak.philia.dto.comment.CommentDto;
+import com.mainak.philia.dto.comment.UserCommentDto;
 import com.mainak.philia.dto.notification.PhiliaNotificationDto;
 import com.mainak.philia.dto.post.PostDto;
 import com.mainak.philia.dto.user.*;
 import com.mainak.philia.service.CommentService;
 import com.mainak.philia.service.NotificationService;
 import com.mainak.philia.service.PostService;
+import com.mainak.philia.service.TimelineService;
 import com.mainak.philia.service.UserService;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -26,6 +31,7 @@ public class UserController {
     private final PostService postService;
     private final CommentService commentService;
     private final NotificationService notificationService;
+    private final TimelineService timelineService;
 
     @GetMapping("")
     public ResponseEntity<List<UserDto>> getAllUsers() {
@@ -38,8 +44,12 @@ public class UserController {
     }
 
     @GetMapping("/profile/{id}/image")
-    public ResponseEntity<byte[]> getUserProfileImageById(@PathVariable Long id) {
-        return service.getUserProfileImageById(id);
+    public ResponseEntity<Resource> getUserProfileImageById(
+            @PathVariable Long id,
+            @RequestParam(name = "v", required = false) String version,
+            @RequestParam(name = "size", required = false) Integer size,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return service.getUserProfileImageById(id, version, size, ifNoneMatch);
     }
 
     @GetMapping("/profile/{id}/posts")
@@ -52,11 +62,43 @@ public class UserController {
         return commentService.getCommentsByUserId(id);
     }
 
+    @GetMapping("/{id}/comments/page")
+    public ResponseEntity<CursorPageDto<UserCommentDto>> getCommentPageByUserId(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return commentService.getCommentPageByUserId(id, cursor, size);
+    }
+
     @GetMapping("/{id}/friends")
     public ResponseEntity<List<UserDto>> getFriendsByUserId(@PathVariable Long id) {
         return service.getFriendsByUserId(id);
     }
 
+    @GetMapping("/{id}/friends/page")
+    public ResponseEntity<CursorPageDto<UserDto>> getFriendPageByUserId(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return service.getFriendPageByUserId(id, cursor, size);
+    }
+
+    @GetMapping("/{id}/timeline")
+    public ResponseEntity<CursorPageDto<PostDto>> getTimeline(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return timelineService.getTimeline(id, cursor, size);
+    }
+
+    @GetMapping("/{id}/likes")
+    public ResponseEntity<LikedIdsDto> getLikedIds(
+            @PathVariable Long id,
+            @RequestParam(required = false) List<Long> postIds,
+            @RequestParam(required = false) List<Long> commentIds) {
+        return service.getLikedIds(id, postIds, commentIds);
+    }
+
     @GetMapping("/{id}/friends/suggestions")
     public ResponseEntity<List<FriendSuggestionDto>> getFriendSuggestions(@PathVariable Long id) {
         return service.getFriendSuggestions(id);
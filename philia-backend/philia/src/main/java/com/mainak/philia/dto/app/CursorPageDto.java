@@ -0,0 +1,16 @@
+package com.mainak.philia.dto.app;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDto<T> {
+    private List<T> items;
+    // Opaque cursor for the next page, null when there are no more items
+    private String next;
+}
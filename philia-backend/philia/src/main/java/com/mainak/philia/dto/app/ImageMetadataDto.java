@@ -0,0 +1,15 @@
+package com.mainak.philia.dto.app;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Everything needed to answer an image request, without the legacy MEDIUMBLOB column
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageMetadataDto {
+    private String imageKey;
+    private String imageType;
+    private boolean hasLegacyImage;
+}
@@ -0,0 +1,15 @@
+package com.mainak.philia.dto.app;
+
+import com.mainak.philia.enums.ImageSize;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class ImageUploadedEvent {
+    private String imageKey;
+    private String contentType;
+    private List<ImageSize> sizes;
+}
@@ -1,11 +1,13 @@
 package com.mainak.philia.dto.comment;
 
 import com.mainak.philia.dto.user.UserDto;
+import com.mainak.philia.enums.ReactionType;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -16,6 +18,8 @@ public class CommentDto {
     private String content;
     private UserDto user;
     private Long likesCount;
+    // Reaction histogram, only the reactions used at least once
+    private Map<ReactionType, Long> reactionCounts;
     private String commentLikesUrl;
     private LocalDateTime createdAt;
 }
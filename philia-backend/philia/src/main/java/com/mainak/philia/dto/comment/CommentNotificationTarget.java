@@ -0,0 +1,15 @@
+package com.mainak.philia.dto.comment;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// What a comment like notification needs, read without loading the Comment entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentNotificationTarget {
+    private Long userId;
+    private Long postId;
+    private String content;
+}
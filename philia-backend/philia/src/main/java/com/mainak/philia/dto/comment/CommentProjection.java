@@ -0,0 +1,24 @@
+package com.mainak.philia.dto.comment;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Flat row with everything a CommentDto needs, selected together with the author in a single query
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentProjection {
+    private Long id;
+    private Long postId;
+    private String content;
+    private LocalDateTime createdAt;
+    private Long likesCount;
+    private Long userId;
+    private String userFirstName;
+    private String userLastName;
+    private boolean userHasProfileImage;
+    private String userProfileImageKey;
+}
@@ -0,0 +1,14 @@
+package com.mainak.philia.dto.comment;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+// A comment in the comment history of a user, with the title of the post it was made on
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class UserCommentDto extends CommentDto {
+    // Null when the post is being deleted
+    private String postTitle;
+}
@@ -0,0 +1,14 @@
+package com.mainak.philia.dto.post;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+public class PostCreatedEvent {
+    private Long postId;
+    private Long authorId;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,10 @@
+package com.mainak.philia.dto.post;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class PostDeletedEvent {
+    private Long postId;
+}
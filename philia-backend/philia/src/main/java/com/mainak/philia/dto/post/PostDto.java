@@ -2,11 +2,13 @@ package com.mainak.philia.dto.post;
 
 import com.mainak.philia.dto.comment.CommentDto;
 import com.mainak.philia.dto.user.UserDto;
+import com.mainak.philia.enums.ReactionType;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -17,6 +19,8 @@ public class PostDto {
     private String imageUrl;
     private UserDto user;
     private Long likesCount;
+    // Reaction histogram, only the reactions used at least once
+    private Map<ReactionType, Long> reactionCounts;
     private Long commentsCount;
     private String postLikesUrl;
     private String postCommentsUrl;
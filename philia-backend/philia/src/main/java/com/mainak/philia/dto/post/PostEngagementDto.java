@@ -0,0 +1,17 @@
+package com.mainak.philia.dto.post;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostEngagementDto {
+    private Long postId;
+    private LocalDateTime createdAt;
+    // Likes + comments
+    private Long engagementCount;
+}
@@ -0,0 +1,12 @@
+package com.mainak.philia.dto.post;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Published when a like or comment is added to (+1) or removed from (-1) a post
+@Getter
+@AllArgsConstructor
+public class PostEngagementEvent {
+    private Long postId;
+    private long delta;
+}
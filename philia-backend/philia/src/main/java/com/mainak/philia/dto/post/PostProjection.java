@@ -0,0 +1,26 @@
+package com.mainak.philia.dto.post;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Flat row with everything a PostDto needs, selected together with the author in a single query
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostProjection {
+    private Long id;
+    private String caption;
+    private boolean hasImage;
+    private String imageKey;
+    private LocalDateTime createdAt;
+    private Long likesCount;
+    private Long commentsCount;
+    private Long userId;
+    private String userFirstName;
+    private String userLastName;
+    private boolean userHasProfileImage;
+    private String userProfileImageKey;
+}
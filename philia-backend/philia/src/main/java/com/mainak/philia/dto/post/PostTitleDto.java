@@ -0,0 +1,16 @@
+package com.mainak.philia.dto.post;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostTitleDto {
+    public static final int MAX_LENGTH = 100;
+
+    private Long postId;
+    // Start of the caption, at most MAX_LENGTH characters
+    private String title;
+}
@@ -0,0 +1,16 @@
+package com.mainak.philia.dto.reaction;
+
+import com.mainak.philia.enums.ReactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One bar of the reaction histogram of a post/comment
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReactionCountDto {
+    private Long targetId;
+    private ReactionType reaction;
+    private Long reactionsCount;
+}
@@ -0,0 +1,15 @@
+package com.mainak.philia.dto.reaction;
+
+import com.mainak.philia.enums.ReactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// The reaction a user left on a post/comment
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserReactionDto {
+    private Long targetId;
+    private ReactionType reaction;
+}
@@ -0,0 +1,10 @@
+package com.mainak.philia.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class AccountDeletionRequestedEvent {
+    private Long userId;
+}
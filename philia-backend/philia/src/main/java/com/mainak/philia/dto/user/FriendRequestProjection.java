@@ -0,0 +1,21 @@
+package com.mainak.philia.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// A pending request of the user with the other user's UserDto columns, sent tells whether the user sent or received it
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FriendRequestProjection {
+    private Long id;
+    private String firstName;
+    private String lastName;
+    private boolean hasProfileImage;
+    private String profileImageKey;
+    private boolean sent;
+    private LocalDateTime sentAt;
+}
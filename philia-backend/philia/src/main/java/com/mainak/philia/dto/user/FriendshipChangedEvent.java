@@ -0,0 +1,11 @@
+package com.mainak.philia.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class FriendshipChangedEvent {
+    private Long userId;
+    private Long friendId;
+}
@@ -0,0 +1,14 @@
+package com.mainak.philia.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One direction of a friendship, a friendships row is read once for each of its two users
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FriendshipDto {
+    private Long userId;
+    private Long friendId;
+}
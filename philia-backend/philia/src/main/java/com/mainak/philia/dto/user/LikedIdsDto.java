@@ -0,0 +1,20 @@
+package com.mainak.philia.dto.user;
+
+import com.mainak.philia.enums.ReactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LikedIdsDto {
+    private Set<Long> likedPostIds;
+    private Set<Long> likedCommentIds;
+    // Reaction the user left on each of the liked posts/comments
+    private Map<Long, ReactionType> postReactions;
+    private Map<Long, ReactionType> commentReactions;
+}
@@ -0,0 +1,20 @@
+package com.mainak.philia.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// A user who liked a post or comment, with the like time used as the page cursor
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LikerProjection {
+    private LocalDateTime likedAt;
+    private Long userId;
+    private String firstName;
+    private String lastName;
+    private boolean hasProfileImage;
+    private String profileImageKey;
+}
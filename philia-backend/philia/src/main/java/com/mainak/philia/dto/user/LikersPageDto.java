@@ -0,0 +1,20 @@
+package com.mainak.philia.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LikersPageDto {
+    // Most recent likes first
+    private List<UserDto> items;
+    // Opaque cursor for the next page, null when there are no more likers
+    private String next;
+    private Long totalCount;
+    // Friends of the logged-in user who liked, only on the first page
+    private List<UserDto> friends;
+}
@@ -0,0 +1,17 @@
+package com.mainak.philia.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// The columns a UserDto is built from, read without loading the User entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserProjection {
+    private Long id;
+    private String firstName;
+    private String lastName;
+    private boolean hasProfileImage;
+    private String profileImageKey;
+}
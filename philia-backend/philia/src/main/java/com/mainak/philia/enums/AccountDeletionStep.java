@@ -0,0 +1,14 @@
+package com.mainak.philia.enums;
+
+// Steps of a background account deletion, run in this order
+public enum AccountDeletionStep {
+    // Friendships, friend requests, timeline entries and notifications
+    RELATIONS,
+    // Reactions of any type, the step names are kept as they are stored on unfinished jobs
+    POST_LIKES,
+    COMMENT_LIKES,
+    COMMENTS,
+    POSTS,
+    USER,
+    DONE
+}
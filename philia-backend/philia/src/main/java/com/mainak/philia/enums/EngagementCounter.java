@@ -0,0 +1,31 @@
+package com.mainak.philia.enums;
+
+public enum EngagementCounter {
+    // likes_count is the total of the reactions of any type
+    POST_LIKES("UPDATE posts SET likes_count = likes_count + ? WHERE id = ?"),
+    POST_COMMENTS("UPDATE posts SET comments_count = comments_count + ? WHERE id = ?"),
+    COMMENT_LIKES("UPDATE comments SET likes_count = likes_count + ? WHERE id = ?"),
+    // Reaction histograms, a row is created the first time a reaction type is used on the post/comment
+    POST_REACTIONS(reactionCountUpsert(ReactionTarget.POST)),
+    COMMENT_REACTIONS(reactionCountUpsert(ReactionTarget.COMMENT));
+
+    // Batched statement applying a (delta, id) pair, or a (delta, id, reaction) triple for the per-reaction counters
+    private final String incrementSql;
+
+    EngagementCounter(String incrementSql) {
+        this.incrementSql = incrementSql;
+    }
+
+    public String getIncrementSql() {
+        return incrementSql;
+    }
+
+    public boolean isPerReaction() {
+        return this == POST_REACTIONS || this == COMMENT_REACTIONS;
+    }
+
+    private static String reactionCountUpsert(ReactionTarget target) {
+        return "INSERT INTO reaction_counts (reactions_count, target_id, reaction, target_type) VALUES (?, ?, ?, " + target.ordinal() + ") " +
+                "ON DUPLICATE KEY UPDATE reactions_count = reactions_count + VALUES(reactions_count)";
+    }
+}
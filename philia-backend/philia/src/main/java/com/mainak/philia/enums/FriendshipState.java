@@ -0,0 +1,13 @@
+package com.mainak.philia.enums;
+
+// Stored by ordinal in a TINYINT, new states must be appended to keep the stored values.
+// user_a is the lower id of the pair, the requested states tell which of the two sent the request.
+public enum FriendshipState {
+    REQUESTED_BY_A,
+    REQUESTED_BY_B,
+    FRIENDS;
+
+    public static FriendshipState requestedBy(Long senderId, Long receiverId) {
+        return senderId < receiverId ? REQUESTED_BY_A : REQUESTED_BY_B;
+    }
+}
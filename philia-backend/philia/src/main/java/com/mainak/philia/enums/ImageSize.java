@@ -0,0 +1,34 @@
+package com.mainak.philia.enums;
+
+import java.util.List;
+
+// Fixed derivative sizes, the value is the longest side in pixels
+public enum ImageSize {
+    AVATAR_SMALL(64),
+    AVATAR(128),
+    FEED(640),
+    FULL(1280);
+
+    public static final List<ImageSize> PROFILE_IMAGE_SIZES = List.of(AVATAR_SMALL, AVATAR);
+    public static final List<ImageSize> POST_IMAGE_SIZES = List.of(FEED, FULL);
+
+    private final int pixels;
+
+    ImageSize(int pixels) {
+        this.pixels = pixels;
+    }
+
+    public int getPixels() {
+        return pixels;
+    }
+
+    // Smallest size that is at least as large as the requested one, null when only the original is large enough
+    public static ImageSize fitting(int requestedPixels) {
+        for(ImageSize size : values()){
+            if(size.pixels >= requestedPixels){
+                return size;
+            }
+        }
+        return null;
+    }
+}
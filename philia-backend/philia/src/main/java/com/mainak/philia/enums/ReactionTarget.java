@@ -0,0 +1,7 @@
+package com.mainak.philia.enums;
+
+// What a reaction is on, stored by ordinal in a TINYINT, new targets must be appended
+public enum ReactionTarget {
+    POST,
+    COMMENT
+}
@@ -0,0 +1,11 @@
+package com.mainak.philia.enums;
+
+// Stored by ordinal in a TINYINT, new reactions must be appended to keep the stored values
+public enum ReactionType {
+    LIKE,
+    LOVE,
+    LAUGH,
+    WOW,
+    SAD,
+    ANGRY
+}
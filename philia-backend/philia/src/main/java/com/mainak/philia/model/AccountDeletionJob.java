@@ -0,0 +1,34 @@
+package com.mainak.philia.model;
+
+import com.mainak.philia.enums.AccountDeletionStep;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Checkpoint of a background account deletion, updated in the same transaction as each batch so the job resumes where it stopped
+@Entity
+@Table(name = "account_deletion_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountDeletionJob {
+    // Id of the user being deleted, the job row outlives the user row
+    @Id
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private AccountDeletionStep step = AccountDeletionStep.RELATIONS;
+
+    @Column(nullable = false)
+    private Long rowsDeleted = 0L;
+
+    @Column(nullable = false, columnDefinition = "TIMESTAMP")
+    private LocalDateTime startedAt = LocalDateTime.now();
+
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime finishedAt;
+}
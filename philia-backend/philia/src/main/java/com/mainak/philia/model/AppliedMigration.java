@@ -0,0 +1,23 @@
+package com.mainak.philia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One row per DataMigration that has run to completion, see DataMigrationRunner
+@Entity
+@Table(name = "applied_migrations")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppliedMigration {
+    @Id
+    @Column(length = 100)
+    private String name;
+
+    @Column(nullable = false, columnDefinition = "TIMESTAMP")
+    private LocalDateTime appliedAt;
+}
@@ -1,19 +1,19 @@
 package com.mainak.philia.model;
 
-import com.mainak.philia.exception.AppException;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
-import org.springframework.http.HttpStatus;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
-import java.util.HashSet;
-import java.util.Set;
 
 @Entity
-@Table(name = "comments")
+@Table(name = "comments", indexes = {
+        @Index(name = "idx_comments_post_created_at_id", columnList = "post_id, created_at, id"),
+        @Index(name = "idx_comments_user_created_at_id", columnList = "user_id, created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -37,23 +37,8 @@ public class Comment {
     @Column(updatable = false, columnDefinition = "TIMESTAMP")
     private LocalDateTime createdAt = LocalDateTime.now();
 
-    @ManyToMany
-    @JoinTable(
-            name = "comment_likes",
-            joinColumns = @JoinColumn(name = "comment_id"),
-            inverseJoinColumns = @JoinColumn(name = "user_id")
-    )
-    @EqualsAndHashCode.Exclude
-    private Set<User> likes = new HashSet<>();
-
-    public void addLike(User user) {
-        this.likes.add(user);
-    }
-
-    public void removeLike(User user) {
-        if(!this.likes.contains(user)) {
-            throw new AppException("The user has not liked this comment", HttpStatus.BAD_REQUEST);
-        }
-        this.likes.remove(user);
-    }
+    // Denormalized counter of the reactions of any type, only changed through atomic UPDATE statements (see EngagementCounterBuffer)
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("0")
+    private Long likesCount = 0L;
 }
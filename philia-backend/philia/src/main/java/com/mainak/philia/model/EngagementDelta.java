@@ -0,0 +1,35 @@
+package com.mainak.philia.model;
+
+import com.mainak.philia.enums.EngagementCounter;
+import com.mainak.philia.enums.ReactionType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Journal of counter changes not yet applied to posts/comments, written in the same transaction as the like or comment
+@Entity
+@Table(name = "engagement_deltas")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EngagementDelta {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private EngagementCounter counter;
+
+    @Column(nullable = false)
+    private Long targetId;
+
+    // Only set for the per-reaction counters
+    @Enumerated(EnumType.ORDINAL)
+    @Column(columnDefinition = "TINYINT")
+    private ReactionType reaction;
+
+    @Column(nullable = false)
+    private Long delta;
+}
@@ -0,0 +1,53 @@
+package com.mainak.philia.model;
+
+import com.mainak.philia.enums.FriendshipState;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// One row per pair of users with a pending friend request or a friendship, user_a is always the lower id of the two.
+// Replaces the user_friends and friend_requests join tables and FriendRequestMetaData.
+// Written with single INSERT IGNORE/UPDATE/DELETE statements on the primary key (see UserService), never through the entity.
+@Entity
+@Table(name = "friendships", indexes = {
+        // InnoDB appends the primary key, so both cover a user's requests and friends from either side of the pair
+        @Index(name = "idx_friendships_a_state_created_at", columnList = "user_a, state, created_at"),
+        @Index(name = "idx_friendships_b_state_created_at", columnList = "user_b, state, created_at")
+})
+@IdClass(Friendship.FriendshipId.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Friendship {
+    @Id
+    @Column(name = "user_a")
+    private Long userA;
+
+    @Id
+    @Column(name = "user_b")
+    private Long userB;
+
+    @Enumerated(EnumType.ORDINAL)
+    @Column(nullable = false, columnDefinition = "TINYINT")
+    private FriendshipState state;
+
+    // When the request was sent
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // When the request was accepted, for friends
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FriendshipId implements Serializable {
+        private Long userA;
+        private Long userB;
+    }
+}
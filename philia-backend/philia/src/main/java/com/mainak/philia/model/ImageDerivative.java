@@ -0,0 +1,34 @@
+package com.mainak.philia.model;
+
+import com.mainak.philia.enums.ImageSize;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Resized copy of an image in the BlobStore, when the original already fits the size the derivative key is the source key itself
+@Entity
+@Table(name = "image_derivatives", indexes = {
+        @Index(name = "uk_image_derivatives_source_size", columnList = "source_key, size", unique = true)
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageDerivative {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String sourceKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private ImageSize size;
+
+    @Column(nullable = false, length = 64)
+    private String derivativeKey;
+
+    @Column(nullable = false)
+    private String contentType;
+}
@@ -6,6 +6,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Formula;
 import org.springframework.http.HttpStatus;
 
 import java.time.LocalDateTime;
@@ -13,7 +15,10 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "posts")
+@Table(name = "posts", indexes = {
+        @Index(name = "idx_posts_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_posts_user_created_at_id", columnList = "user_id, created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,9 +31,13 @@ public class Post {
 
     private String imageType;
 
-    @Column(name = "image", columnDefinition = "MEDIUMBLOB")
-    @Lob
-    private byte[] image;
+    // Key of the image in the BlobStore
+    @Column(length = 64)
+    private String imageKey;
+
+    // Whether the row still has a legacy inline image (see PostImage), evaluated in SQL without reading the bytes
+    @Formula("image IS NOT NULL")
+    private boolean hasLegacyImage;
 
     @ManyToOne
     @JoinColumn(name = "user_id", nullable = false)
@@ -39,28 +48,23 @@ public class Post {
     @EqualsAndHashCode.Exclude
     private Set<Comment> comments = new HashSet<>();
 
-    @ManyToMany
-    @JoinTable(
-            name = "post_likes",
-            joinColumns = @JoinColumn(name = "post_id"),
-            inverseJoinColumns = @JoinColumn(name = "user_id")
-    )
-    @EqualsAndHashCode.Exclude
-    private Set<User> likes = new HashSet<>();
+    // Denormalized counters, only changed through atomic UPDATE statements (see EngagementCounterBuffer).
+    // likesCount is the total of the reactions of any type, see Reaction
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("0")
+    private Long likesCount = 0L;
+
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("0")
+    private Long commentsCount = 0L;
 
     @Column(updatable = false, columnDefinition = "TIMESTAMP")
     private LocalDateTime createdAt = LocalDateTime.now();
 
-    public void addLike(User user) {
-        this.likes.add(user);
-    }
-
-    public void removeLike(User user) {
-        if(!this.likes.contains(user)){
-            throw new AppException("The user has not liked this post", HttpStatus.BAD_REQUEST);
-        }
-        this.likes.remove(user);
-    }
+    // Set while a large post is deleted in the background (see PostPurgeService), post queries skip such posts
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("false")
+    private boolean pendingDeletion;
 
     public void addComment(Comment comment) {
         this.comments.add(comment);
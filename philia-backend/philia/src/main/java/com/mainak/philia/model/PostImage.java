@@ -0,0 +1,22 @@
+package com.mainak.philia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Legacy inline image of a post, mapped apart from Post on the same row so loading a Post never reads the MEDIUMBLOB
+@Entity
+@Table(name = "posts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostImage {
+    // Same id as the post
+    @Id
+    private Long id;
+
+    @Column(name = "image", columnDefinition = "MEDIUMBLOB")
+    @Lob
+    private byte[] image;
+}
@@ -0,0 +1,56 @@
+package com.mainak.philia.model;
+
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// One row per user and post/comment they reacted to, replaces the post_likes and comment_likes join tables.
+// Written with single INSERT IGNORE/UPDATE/DELETE statements (see EngagementMutationService), never through the entity.
+@Entity
+@Table(name = "reactions", indexes = {
+        @Index(name = "idx_reactions_target_reacted_at_user", columnList = "target_type, target_id, reacted_at, user_id"),
+        @Index(name = "idx_reactions_user_target", columnList = "user_id, target_type, target_id")
+})
+@IdClass(Reaction.ReactionId.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Reaction {
+    @Id
+    @Enumerated(EnumType.ORDINAL)
+    @Column(name = "target_type", columnDefinition = "TINYINT")
+    private ReactionTarget targetType;
+
+    @Id
+    @Column(name = "target_id")
+    private Long targetId;
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Enumerated(EnumType.ORDINAL)
+    @Column(nullable = false, columnDefinition = "TINYINT")
+    private ReactionType reaction;
+
+    // Filled by the database, the likes page cursor
+    @Column(nullable = false, updatable = false, columnDefinition = "TIMESTAMP")
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    private LocalDateTime reactedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReactionId implements Serializable {
+        private ReactionTarget targetType;
+        private Long targetId;
+        private Long userId;
+    }
+}
@@ -0,0 +1,48 @@
+package com.mainak.philia.model;
+
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.io.Serializable;
+
+// Denormalized reaction histogram of a post/comment, one row per reaction type used on it.
+// Only changed through the batched upserts of the EngagementCounterBuffer, like the likes_count columns.
+@Entity
+@Table(name = "reaction_counts")
+@IdClass(ReactionCount.ReactionCountId.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReactionCount {
+    @Id
+    @Enumerated(EnumType.ORDINAL)
+    @Column(name = "target_type", columnDefinition = "TINYINT")
+    private ReactionTarget targetType;
+
+    @Id
+    @Column(name = "target_id")
+    private Long targetId;
+
+    @Id
+    @Enumerated(EnumType.ORDINAL)
+    @Column(name = "reaction", columnDefinition = "TINYINT")
+    private ReactionType reaction;
+
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("0")
+    private Long reactionsCount = 0L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReactionCountId implements Serializable {
+        private ReactionTarget targetType;
+        private Long targetId;
+        private ReactionType reaction;
+    }
+}
@@ -0,0 +1,39 @@
+package com.mainak.philia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One row per (timeline owner, post), written when a friend creates a post
+@Entity
+@Table(name = "timeline_entries", indexes = {
+        @Index(name = "idx_timeline_owner_created_post", columnList = "owner_id, created_at, post_id"),
+        @Index(name = "uk_timeline_owner_post", columnList = "owner_id, post_id", unique = true),
+        @Index(name = "idx_timeline_post", columnList = "post_id"),
+        // Deleting an author's entries, see AccountDeletionService and removing a friend
+        @Index(name = "idx_timeline_author_post", columnList = "author_id, post_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimelineEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long ownerId;
+
+    @Column(nullable = false)
+    private Long postId;
+
+    @Column(nullable = false)
+    private Long authorId;
+
+    // Copy of the post's createdAt, so a timeline page is a single range scan on the owner index
+    @Column(nullable = false, columnDefinition = "TIMESTAMP")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,22 @@
+package com.mainak.philia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Legacy inline profile image of a user, mapped apart from User on the same row so loading a User never reads the MEDIUMBLOB
+@Entity
+@Table(name = "users")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserAvatar {
+    // Same id as the user
+    @Id
+    private Long id;
+
+    @Column(name = "image", columnDefinition = "MEDIUMBLOB")
+    @Lob
+    private byte[] image;
+}
@@ -0,0 +1,24 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.enums.AccountDeletionStep;
+import com.mainak.philia.model.AccountDeletionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface AccountDeletionJobRepository extends JpaRepository<AccountDeletionJob, Long> {
+    @Query("SELECT j.userId FROM AccountDeletionJob j WHERE j.finishedAt IS NULL")
+    public List<Long> findUnfinishedUserIds();
+
+    @Modifying
+    @Query("UPDATE AccountDeletionJob j SET j.rowsDeleted = j.rowsDeleted + :rows WHERE j.userId = :userId")
+    public int addRowsDeleted(@Param("userId") Long userId, @Param("rows") long rows);
+
+    @Modifying
+    @Query("UPDATE AccountDeletionJob j SET j.step = :step, j.finishedAt = :finishedAt WHERE j.userId = :userId")
+    public int updateStep(@Param("userId") Long userId, @Param("step") AccountDeletionStep step, @Param("finishedAt") LocalDateTime finishedAt);
+}
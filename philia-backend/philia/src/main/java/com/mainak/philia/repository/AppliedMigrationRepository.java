@@ -0,0 +1,7 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.model.AppliedMigration;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface AppliedMigrationRepository extends JpaRepository<AppliedMigration, String> {
+}
@@ -1,14 +1,79 @@
 package com.mainak.philia.repository;
 
+import com.mainak.philia.dto.comment.CommentNotificationTarget;
+import com.mainak.philia.dto.comment.CommentProjection;
 import com.mainak.philia.model.Comment;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public interface CommentRepository extends JpaRepository<Comment, Long> {
-    public List<Comment> findAllByPostIdOrderByCreatedAtDesc(Long postId);
-    public List<Comment> findAllByUserId(Long userId);
-}
+    // Builds CommentDtos without loading Comment/User entities or touching the reactions
+    String COMMENT_PROJECTION = "SELECT new com.mainak.philia.dto.comment.CommentProjection(" +
+            "c.id, c.post.id, c.content, c.createdAt, c.likesCount, " +
+            "u.id, u.firstName, u.lastName, CASE WHEN u.profileImageKey IS NOT NULL OR u.hasLegacyProfileImage = true THEN true ELSE false END, u.profileImageKey) " +
+            "FROM Comment c JOIN c.user u ON u.deletedAt IS NULL ";
+    String NEWEST_FIRST = " ORDER BY c.createdAt DESC, c.id DESC";
+
+    @Query(COMMENT_PROJECTION + "WHERE c.post.id = :postId" + NEWEST_FIRST)
+    public List<CommentProjection> findProjectionsByPostId(@Param("postId") Long postId);
+
+    // Keyset pagination over the (post_id, created_at, id) index, newest first
+    @Query(COMMENT_PROJECTION + "WHERE c.post.id = :postId" + NEWEST_FIRST)
+    public List<CommentProjection> findPageByPostId(@Param("postId") Long postId, Pageable pageable);
+
+    @Query(COMMENT_PROJECTION + "WHERE c.post.id = :postId AND (c.createdAt < :createdAt OR (c.createdAt = :createdAt AND c.id < :id))" + NEWEST_FIRST)
+    public List<CommentProjection> findPageByPostIdBefore(@Param("postId") Long postId, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query(COMMENT_PROJECTION + "WHERE u.id = :userId" + NEWEST_FIRST)
+    public List<CommentProjection> findProjectionsByUserId(@Param("userId") Long userId);
+
+    // Comment history of a user, keyset pagination over the (user_id, created_at, id) index, newest first
+    @Query(COMMENT_PROJECTION + "WHERE u.id = :userId" + NEWEST_FIRST)
+    public List<CommentProjection> findPageByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(COMMENT_PROJECTION + "WHERE u.id = :userId AND (c.createdAt < :createdAt OR (c.createdAt = :createdAt AND c.id < :id))" + NEWEST_FIRST)
+    public List<CommentProjection> findPageByUserIdBefore(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT c.id FROM Comment c WHERE c.post.id = :postId")
+    public List<Long> findIdsByPostId(@Param("postId") Long postId, Pageable pageable);
 
+    @Query("SELECT COALESCE(SUM(c.likesCount), 0) FROM Comment c WHERE c.post.id = :postId")
+    public long sumLikesCountByPostId(@Param("postId") Long postId);
+
+    @Query("SELECT new com.mainak.philia.dto.comment.CommentNotificationTarget(c.user.id, c.post.id, c.content) FROM Comment c WHERE c.id = :id")
+    public Optional<CommentNotificationTarget> findNotificationTargetById(@Param("id") Long id);
+
+    @Query("SELECT c.likesCount FROM Comment c WHERE c.id = :id")
+    public Optional<Long> findLikesCountById(@Param("id") Long id);
+
+    // Batches for the account deletion, see AccountDeletionService
+    @Query("SELECT c.id FROM Comment c WHERE c.user.id = :userId")
+    public List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT MAX(c.id) FROM Comment c")
+    public Long findMaxId();
+
+    @Modifying
+    @Query("UPDATE Comment c SET c.likesCount = c.likesCount - 1 WHERE c.id IN :commentIds")
+    public int decrementLikesCount(@Param("commentIds") Collection<Long> commentIds);
+
+    // Recomputes the like counters from the reactions for a range of comments, target_type 1 is ReactionTarget.COMMENT.
+    // Journal rows not yet applied are subtracted, see PostRepository.reconcileCounters.
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE comments c SET c.likes_count = (SELECT COUNT(*) FROM reactions r WHERE r.target_type = 1 AND r.target_id = c.id) - " +
+            "(SELECT COALESCE(SUM(d.delta), 0) FROM engagement_deltas d WHERE d.counter = 'COMMENT_LIKES' AND d.target_id = c.id) " +
+            "WHERE c.id BETWEEN :fromId AND :toId", nativeQuery = true)
+    public int reconcileCounters(@Param("fromId") Long fromId, @Param("toId") Long toId);
+}
@@ -0,0 +1,18 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.model.EngagementDelta;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface EngagementDeltaRepository extends JpaRepository<EngagementDelta, Long> {
+    @Query("SELECT MAX(d.id) FROM EngagementDelta d")
+    public Long findMaxId();
+
+    // Locking read, so a row with a lower id whose transaction has not committed yet is waited for instead of skipped
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    public List<EngagementDelta> findAllByIdLessThanEqual(Long maxId);
+}
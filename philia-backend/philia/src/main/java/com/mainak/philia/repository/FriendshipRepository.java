@@ -0,0 +1,115 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.dto.user.FriendRequestProjection;
+import com.mainak.philia.dto.user.FriendshipDto;
+import com.mainak.philia.dto.user.UserProjection;
+import com.mainak.philia.enums.FriendshipState;
+import com.mainak.philia.model.Friendship;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Pairs are passed as (userA, userB) with userA the lower id. Every read of one user's relations matches user_a or user_b,
+// each side served by its own index.
+public interface FriendshipRepository extends JpaRepository<Friendship, Friendship.FriendshipId> {
+    String FRIENDS = "com.mainak.philia.enums.FriendshipState.FRIENDS";
+    String REQUESTED_BY_A = "com.mainak.philia.enums.FriendshipState.REQUESTED_BY_A";
+    String REQUESTED_BY_B = "com.mainak.philia.enums.FriendshipState.REQUESTED_BY_B";
+    String OF_USER = "(f.userA = :userId OR f.userB = :userId) ";
+    String OTHER_USER = "CASE WHEN f.userA = :userId THEN f.userB ELSE f.userA END";
+    String FRIENDS_OF_USER = UserRepository.USER_PROJECTION + "JOIN Friendship f ON u.id = " + OTHER_USER + " ";
+    String ACTIVE_FRIENDS = "WHERE " + OF_USER + "AND f.state = " + FRIENDS + " AND u.deletedAt IS NULL ";
+    String BY_NAME = "ORDER BY u.firstName, u.lastName, u.id";
+
+    @Query("SELECT f.state FROM Friendship f WHERE f.userA = :userA AND f.userB = :userB")
+    public Optional<FriendshipState> findState(@Param("userA") Long userA, @Param("userB") Long userB);
+
+    // Single-statement mutations, the state in the WHERE clause makes each one a check and a write. Native statements take the state by ordinal.
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO friendships (user_a, user_b, state, created_at, updated_at) VALUES (:userA, :userB, :state, :now, :now)", nativeQuery = true)
+    public int insertRequest(@Param("userA") Long userA, @Param("userB") Long userB, @Param("state") int state, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE Friendship f SET f.state = :to, f.updatedAt = :now WHERE f.userA = :userA AND f.userB = :userB AND f.state = :from")
+    public int updateState(@Param("userA") Long userA, @Param("userB") Long userB, @Param("from") FriendshipState from,
+                           @Param("to") FriendshipState to, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM Friendship f WHERE f.userA = :userA AND f.userB = :userB AND f.state = :state")
+    public int deleteWithState(@Param("userA") Long userA, @Param("userB") Long userB, @Param("state") FriendshipState state);
+
+    // A batch of the user's friendships and requests at a time, see AccountDeletionService
+    @Query("SELECT " + OTHER_USER + " FROM Friendship f WHERE " + OF_USER)
+    public List<Long> findRelatedUserIds(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Friendship f WHERE (f.userA = :userId AND f.userB IN :otherIds) OR (f.userB = :userId AND f.userA IN :otherIds)")
+    public int deleteByUserIdAndOtherIds(@Param("userId") Long userId, @Param("otherIds") Collection<Long> otherIds);
+
+    // Sent and received requests in one query, newest first, requests of users whose account is being deleted are left out
+    @Query("SELECT new com.mainak.philia.dto.user.FriendRequestProjection(u.id, u.firstName, u.lastName, " +
+            "CASE WHEN u.profileImageKey IS NOT NULL OR u.hasLegacyProfileImage = true THEN true ELSE false END, u.profileImageKey, " +
+            "CASE WHEN (f.userA = :userId AND f.state = " + REQUESTED_BY_A + ") OR (f.userB = :userId AND f.state = " + REQUESTED_BY_B + ") THEN true ELSE false END, f.createdAt) " +
+            "FROM Friendship f JOIN User u ON u.id = " + OTHER_USER + " " +
+            "WHERE " + OF_USER + "AND f.state <> " + FRIENDS + " AND u.deletedAt IS NULL ORDER BY f.createdAt DESC")
+    public List<FriendRequestProjection> findRequests(@Param("userId") Long userId);
+
+    @Query(FRIENDS_OF_USER + ACTIVE_FRIENDS + BY_NAME)
+    public List<UserProjection> findFriends(@Param("userId") Long userId);
+
+    // Keyset pagination in name order, the cursor is the id of the last friend of the previous page and its name is read in the same query
+    @Query(FRIENDS_OF_USER + ACTIVE_FRIENDS + BY_NAME)
+    public List<UserProjection> findFriendPage(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(FRIENDS_OF_USER + "JOIN User c ON c.id = :afterId " + ACTIVE_FRIENDS +
+            "AND (u.firstName > c.firstName OR (u.firstName = c.firstName AND (u.lastName > c.lastName OR (u.lastName = c.lastName AND u.id > c.id)))) " + BY_NAME)
+    public List<UserProjection> findFriendPageAfter(@Param("userId") Long userId, @Param("afterId") Long afterId, Pageable pageable);
+
+    // Users with a pending friend request from or to the user
+    @Query("SELECT " + OTHER_USER + " FROM Friendship f WHERE " + OF_USER + "AND f.state <> " + FRIENDS)
+    public List<Long> findRequestUserIds(@Param("userId") Long userId);
+
+    @Query("SELECT u.id FROM Friendship f JOIN User u ON u.id = " + OTHER_USER + " WHERE " + OF_USER + "AND f.state = " + FRIENDS + " " +
+            "AND u.friendsCount > :threshold")
+    public List<Long> findFriendIdsWithMoreFriendsThan(@Param("userId") Long userId, @Param("threshold") long threshold);
+
+    // Friend graph reads for FriendGraphIndex, friendships with users whose account is being deleted are left out.
+    // A row is read from the side of user_a and from the side of user_b, so a range of users gets complete friend lists from the two.
+    @Query("SELECT new com.mainak.philia.dto.user.FriendshipDto(f.userA, f.userB) FROM Friendship f JOIN User a ON a.id = f.userA JOIN User b ON b.id = f.userB " +
+            "WHERE f.userA BETWEEN :fromId AND :toId AND f.state = " + FRIENDS + " AND a.deletedAt IS NULL AND b.deletedAt IS NULL")
+    public List<FriendshipDto> findFriendshipsByUserARange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Query("SELECT new com.mainak.philia.dto.user.FriendshipDto(f.userB, f.userA) FROM Friendship f JOIN User a ON a.id = f.userA JOIN User b ON b.id = f.userB " +
+            "WHERE f.userB BETWEEN :fromId AND :toId AND f.state = " + FRIENDS + " AND a.deletedAt IS NULL AND b.deletedAt IS NULL")
+    public List<FriendshipDto> findFriendshipsByUserBRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Query("SELECT u.id FROM Friendship f JOIN User u ON u.id = " + OTHER_USER + " WHERE " + OF_USER + "AND f.state = " + FRIENDS + " " +
+            "AND u.deletedAt IS NULL AND EXISTS (SELECT 1 FROM User v WHERE v.id = :userId AND v.deletedAt IS NULL)")
+    public List<Long> findActiveFriendIds(@Param("userId") Long userId);
+
+    // One-time copy of the old join tables, see LegacyFriendshipMigrationService. Both directions of a friendship were stored, the one
+    // from the lower id is copied. Requests take their time from friend_request_meta_data, friendships the time of the migration.
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO friendships (user_a, user_b, state, created_at, updated_at) " +
+            "SELECT uf.user_id, uf.friend_id, :friends, :now, :now FROM user_friends uf WHERE uf.user_id BETWEEN :fromId AND :toId AND uf.user_id < uf.friend_id", nativeQuery = true)
+    public int copyFriendships(@Param("fromId") Long fromId, @Param("toId") Long toId, @Param("friends") int friends, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO friendships (user_a, user_b, state, created_at, updated_at) " +
+            "SELECT LEAST(fr.sender_id, fr.receiver_id), GREATEST(fr.sender_id, fr.receiver_id), CASE WHEN fr.sender_id < fr.receiver_id THEN :requestedByA ELSE :requestedByB END, " +
+            "COALESCE(m.created_at, :now), COALESCE(m.created_at, :now) FROM friend_requests fr " +
+            "LEFT JOIN friend_request_meta_data m ON m.sender_id = fr.sender_id AND m.receiver_id = fr.receiver_id " +
+            "WHERE fr.sender_id BETWEEN :fromId AND :toId", nativeQuery = true)
+    public int copyFriendRequests(@Param("fromId") Long fromId, @Param("toId") Long toId, @Param("requestedByA") int requestedByA,
+                                  @Param("requestedByB") int requestedByB, @Param("now") LocalDateTime now);
+}
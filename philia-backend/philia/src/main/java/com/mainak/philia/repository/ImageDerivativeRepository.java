@@ -0,0 +1,13 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.enums.ImageSize;
+import com.mainak.philia.model.ImageDerivative;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface ImageDerivativeRepository extends JpaRepository<ImageDerivative, Long> {
+    public Optional<ImageDerivative> findBySourceKeyAndSize(String sourceKey, ImageSize size);
+
+    public boolean existsBySourceKeyAndSize(String sourceKey, ImageSize size);
+}
@@ -2,6 +2,9 @@ package com.mainak.philia.repository;
 
 import com.mainak.philia.model.Notification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -11,4 +14,8 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     public List<Notification> findAllByRecipientIdOrderByCreatedAtDesc(Long recipientId);
     public Optional<Notification> findByIdAndRecipientId(Long id, Long recipientId);
     public List<Notification> findByRecipientIdAndIsReadFalse(Long recipientId);
+
+    @Modifying
+    @Query(value = "DELETE FROM notifications WHERE recipient_id = :recipientId LIMIT :limit", nativeQuery = true)
+    public int deleteByRecipientId(@Param("recipientId") Long recipientId, @Param("limit") int limit);
 }
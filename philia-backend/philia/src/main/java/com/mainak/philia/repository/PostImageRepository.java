@@ -0,0 +1,16 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.model.PostImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface PostImageRepository extends JpaRepository<PostImage, Long> {
+    @Query("SELECT i.image FROM PostImage i WHERE i.id = :id")
+    public byte[] findImageById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE PostImage i SET i.image = NULL WHERE i.id = :id")
+    public int clearImage(@Param("id") Long id);
+}
@@ -1,12 +1,116 @@
 package com.mainak.philia.repository;
 
+import com.mainak.philia.dto.app.ImageMetadataDto;
+import com.mainak.philia.dto.post.PostEngagementDto;
+import com.mainak.philia.dto.post.PostProjection;
+import com.mainak.philia.dto.post.PostTitleDto;
 import com.mainak.philia.model.Post;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface PostRepository extends JpaRepository<Post, Long> {
-    public List<Post> findAllByOrderByCreatedAtDesc();
-    public List<Post> findAllByUserIdOrderByCreatedAtDesc(Long userId);
-    public List<Post> findByCaptionContainingIgnoreCaseOrderByCreatedAtDesc(String keyword);
+    // Builds PostDtos without loading Post/User entities or touching the likes and comments join tables
+    String POST_PROJECTION = "SELECT new com.mainak.philia.dto.post.PostProjection(" +
+            "p.id, p.caption, CASE WHEN p.imageKey IS NOT NULL OR p.hasLegacyImage = true THEN true ELSE false END, p.imageKey, p.createdAt, p.likesCount, p.commentsCount, " +
+            "u.id, u.firstName, u.lastName, CASE WHEN u.profileImageKey IS NOT NULL OR u.hasLegacyProfileImage = true THEN true ELSE false END, u.profileImageKey) " +
+            "FROM Post p JOIN p.user u WHERE p.pendingDeletion = false AND u.deletedAt IS NULL ";
+    String NEWEST_FIRST = " ORDER BY p.createdAt DESC, p.id DESC";
+
+    @Query(POST_PROJECTION + "AND p.id = :id")
+    public Optional<PostProjection> findProjectionById(@Param("id") Long id);
+
+    @Query(POST_PROJECTION + "AND p.id IN :ids")
+    public List<PostProjection> findProjectionsByIds(@Param("ids") Collection<Long> ids);
+
+    @Query(POST_PROJECTION + NEWEST_FIRST)
+    public List<PostProjection> findAllProjections();
+
+    @Query(POST_PROJECTION + "AND u.id = :userId" + NEWEST_FIRST)
+    public List<PostProjection> findProjectionsByUserId(@Param("userId") Long userId);
+
+    @Query(POST_PROJECTION + "AND LOWER(p.caption) LIKE LOWER(CONCAT('%', :keyword, '%'))" + NEWEST_FIRST)
+    public List<PostProjection> searchProjectionsByKeyword(@Param("keyword") String keyword);
+
+    // Keyset pagination over the (created_at, id) index, newest first
+    @Query(POST_PROJECTION + NEWEST_FIRST)
+    public List<PostProjection> findFeedPage(Pageable pageable);
+
+    @Query(POST_PROJECTION + "AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id))" + NEWEST_FIRST)
+    public List<PostProjection> findFeedPageBefore(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p.id FROM Post p WHERE p.pendingDeletion = false ORDER BY p.createdAt DESC, p.id DESC")
+    public List<Long> findRecentPostIds(Pageable pageable);
+
+    @Query("SELECT new com.mainak.philia.dto.post.PostEngagementDto(p.id, p.createdAt, p.likesCount + p.commentsCount) FROM Post p WHERE p.pendingDeletion = false ORDER BY p.createdAt DESC, p.id DESC")
+    public List<PostEngagementDto> findRecentPostEngagements(Pageable pageable);
+
+    @Query(POST_PROJECTION + "AND u.id IN :userIds" + NEWEST_FIRST)
+    public List<PostProjection> findPageByUserIds(@Param("userIds") Collection<Long> userIds, Pageable pageable);
+
+    @Query(POST_PROJECTION + "AND u.id IN :userIds AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id))" + NEWEST_FIRST)
+    public List<PostProjection> findPageByUserIdsBefore(@Param("userIds") Collection<Long> userIds, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    // Titles for the posts of a page of comments, the caption is cut so a long caption doesn't get repeated in every row
+    @Query("SELECT new com.mainak.philia.dto.post.PostTitleDto(p.id, SUBSTRING(p.caption, 1, " + PostTitleDto.MAX_LENGTH + ")) FROM Post p WHERE p.id IN :ids AND p.pendingDeletion = false")
+    public List<PostTitleDto> findTitlesByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT new com.mainak.philia.dto.app.ImageMetadataDto(p.imageKey, p.imageType, p.hasLegacyImage) FROM Post p WHERE p.id = :id AND p.pendingDeletion = false")
+    public Optional<ImageMetadataDto> findImageMetadataById(@Param("id") Long id);
+
+    public List<Post> findTop20ByHasLegacyImageIsTrueAndImageKeyIsNull();
+
+    @Query("SELECT p.likesCount FROM Post p WHERE p.id = :id AND p.pendingDeletion = false")
+    public Optional<Long> findLikesCountById(@Param("id") Long id);
+
+    @Query("SELECT p.user.id FROM Post p WHERE p.id = :id AND p.pendingDeletion = false")
+    public Optional<Long> findOwnerIdById(@Param("id") Long id);
+
+    // Set-based deletion of a post and the rows referencing it, see PostPurgeService
+    @Modifying
+    @Query("UPDATE Post p SET p.pendingDeletion = true WHERE p.id = :id")
+    public int markPendingDeletion(@Param("id") Long id);
+
+    @Query("SELECT p.id FROM Post p WHERE p.pendingDeletion = true")
+    public List<Long> findIdsPendingDeletion();
+
+    @Modifying
+    @Query("DELETE FROM Post p WHERE p.id = :id")
+    public int deletePostRowById(@Param("id") Long id);
+
+    // Batches for the account deletion, see AccountDeletionService
+    @Query("SELECT p.id FROM Post p WHERE p.user.id = :userId")
+    public List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT MAX(p.id) FROM Post p")
+    public Long findMaxId();
+
+    @Modifying
+    @Query("UPDATE Post p SET p.likesCount = p.likesCount - 1 WHERE p.id IN :postIds")
+    public int decrementLikesCount(@Param("postIds") Collection<Long> postIds);
+
+    // Removes a batch of comments from the comment counters of their posts, before the comments are deleted
+    @Modifying
+    @Query("UPDATE Post p SET p.commentsCount = p.commentsCount - (SELECT COUNT(c) FROM Comment c WHERE c.post = p AND c.id IN :commentIds) WHERE p.id IN (SELECT c.post.id FROM Comment c WHERE c.id IN :commentIds)")
+    public int decrementCommentsCountForComments(@Param("commentIds") Collection<Long> commentIds);
+
+    // Recomputes the counters from the reactions and comments for a range of posts, target_type 0 is ReactionTarget.POST.
+    // Journal rows not yet applied are already in the reactions/comments and are added by the next flush, so they are subtracted here.
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE posts p SET " +
+            "p.likes_count = (SELECT COUNT(*) FROM reactions r WHERE r.target_type = 0 AND r.target_id = p.id) - " +
+            "(SELECT COALESCE(SUM(d.delta), 0) FROM engagement_deltas d WHERE d.counter = 'POST_LIKES' AND d.target_id = p.id), " +
+            "p.comments_count = (SELECT COUNT(*) FROM comments c WHERE c.post_id = p.id) - " +
+            "(SELECT COALESCE(SUM(d.delta), 0) FROM engagement_deltas d WHERE d.counter = 'POST_COMMENTS' AND d.target_id = p.id) " +
+            "WHERE p.id BETWEEN :fromId AND :toId", nativeQuery = true)
+    public int reconcileCounters(@Param("fromId") Long fromId, @Param("toId") Long toId);
 }
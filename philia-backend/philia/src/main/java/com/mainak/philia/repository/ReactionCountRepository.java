@@ -0,0 +1,49 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.dto.reaction.ReactionCountDto;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
+import com.mainak.philia.model.ReactionCount;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ReactionCountRepository extends JpaRepository<ReactionCount, ReactionCount.ReactionCountId> {
+    // Histograms of all posts/comments of a page in one query
+    @Query("SELECT new com.mainak.philia.dto.reaction.ReactionCountDto(c.targetId, c.reaction, c.reactionsCount) FROM ReactionCount c " +
+            "WHERE c.targetType = :targetType AND c.targetId IN :targetIds AND c.reactionsCount <> 0")
+    public List<ReactionCountDto> findByTargetIds(@Param("targetType") ReactionTarget targetType, @Param("targetIds") Collection<Long> targetIds);
+
+    @Modifying
+    @Query("UPDATE ReactionCount c SET c.reactionsCount = c.reactionsCount - 1 WHERE c.targetType = :targetType AND c.reaction = :reaction AND c.targetId IN :targetIds")
+    public int decrementCounts(@Param("targetType") ReactionTarget targetType, @Param("reaction") ReactionType reaction, @Param("targetIds") Collection<Long> targetIds);
+
+    @Modifying
+    @Query("DELETE FROM ReactionCount c WHERE c.targetType = :targetType AND c.targetId IN :targetIds")
+    public int deleteByTargetIds(@Param("targetType") ReactionTarget targetType, @Param("targetIds") Collection<Long> targetIds);
+
+    // Recomputes the histograms from the reactions for a range of posts/comments, in two statements: the used reactions, then the ones no longer used.
+    // counter is the journal counter of the target's histogram, its rows not yet applied are subtracted, see PostRepository.reconcileCounters.
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO reaction_counts (target_type, target_id, reaction, reactions_count) " +
+            "SELECT r.target_type, r.target_id, r.reaction, COUNT(*) - " +
+            "(SELECT COALESCE(SUM(d.delta), 0) FROM engagement_deltas d WHERE d.counter = :counter AND d.target_id = r.target_id AND d.reaction = r.reaction) " +
+            "FROM reactions r WHERE r.target_type = :targetType AND r.target_id BETWEEN :fromId AND :toId " +
+            "GROUP BY r.target_type, r.target_id, r.reaction " +
+            "ON DUPLICATE KEY UPDATE reactions_count = VALUES(reactions_count)", nativeQuery = true)
+    public int reconcileCounts(@Param("targetType") int targetType, @Param("counter") String counter, @Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE reaction_counts c SET c.reactions_count = -" +
+            "(SELECT COALESCE(SUM(d.delta), 0) FROM engagement_deltas d WHERE d.counter = :counter AND d.target_id = c.target_id AND d.reaction = c.reaction) " +
+            "WHERE c.target_type = :targetType AND c.target_id BETWEEN :fromId AND :toId " +
+            "AND NOT EXISTS (SELECT 1 FROM reactions r WHERE r.target_type = c.target_type AND r.target_id = c.target_id AND r.reaction = c.reaction)", nativeQuery = true)
+    public int clearUnusedCounts(@Param("targetType") int targetType, @Param("counter") String counter, @Param("fromId") Long fromId, @Param("toId") Long toId);
+}
@@ -0,0 +1,114 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.dto.reaction.UserReactionDto;
+import com.mainak.philia.dto.user.LikerProjection;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
+import com.mainak.philia.model.Reaction;
+import jakarta.persistence.LockModeType;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+public interface ReactionRepository extends JpaRepository<Reaction, Reaction.ReactionId> {
+    // Builds UserDtos of the users who reacted without loading the post/comment or the User entities
+    String LIKER_PROJECTION = "SELECT new com.mainak.philia.dto.user.LikerProjection(" +
+            "r.reactedAt, u.id, u.firstName, u.lastName, CASE WHEN u.profileImageKey IS NOT NULL OR u.hasLegacyProfileImage = true THEN true ELSE false END, u.profileImageKey) " +
+            "FROM Reaction r JOIN User u ON u.id = r.userId AND u.deletedAt IS NULL WHERE r.targetType = :targetType AND r.targetId = :targetId ";
+    String NEWEST_FIRST = " ORDER BY r.reactedAt DESC, r.userId DESC";
+
+    @Query(LIKER_PROJECTION + NEWEST_FIRST)
+    public List<LikerProjection> findLikers(@Param("targetType") ReactionTarget targetType, @Param("targetId") Long targetId);
+
+    // Keyset pagination over the (target_type, target_id, reacted_at, user_id) index, most recent reactions first
+    @Query(LIKER_PROJECTION + NEWEST_FIRST)
+    public List<LikerProjection> findLikersPage(@Param("targetType") ReactionTarget targetType, @Param("targetId") Long targetId, Pageable pageable);
+
+    @Query(LIKER_PROJECTION + "AND (r.reactedAt < :reactedAt OR (r.reactedAt = :reactedAt AND r.userId < :userId))" + NEWEST_FIRST)
+    public List<LikerProjection> findLikersPageBefore(@Param("targetType") ReactionTarget targetType, @Param("targetId") Long targetId,
+                                                      @Param("reactedAt") LocalDateTime reactedAt, @Param("userId") Long userId, Pageable pageable);
+
+    @Query(LIKER_PROJECTION + "AND EXISTS (SELECT 1 FROM Friendship f WHERE f.userA = LEAST(r.userId, :viewerId) AND f.userB = GREATEST(r.userId, :viewerId) " +
+            "AND f.state = " + FriendshipRepository.FRIENDS + ")" + NEWEST_FIRST)
+    public List<LikerProjection> findFriendLikers(@Param("targetType") ReactionTarget targetType, @Param("targetId") Long targetId, @Param("viewerId") Long viewerId, Pageable pageable);
+
+    // Single-statement mutations, see EngagementMutationService. Native statements take the enums by ordinal.
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO reactions (target_type, target_id, user_id, reaction) VALUES (:targetType, :targetId, :userId, :reaction)", nativeQuery = true)
+    public int insertReaction(@Param("targetType") int targetType, @Param("targetId") Long targetId, @Param("userId") Long userId, @Param("reaction") int reaction);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Reaction r WHERE r.targetType = :targetType AND r.targetId = :targetId AND r.userId = :userId")
+    public Optional<Reaction> findForUpdate(@Param("targetType") ReactionTarget targetType, @Param("targetId") Long targetId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query("UPDATE Reaction r SET r.reaction = :reaction WHERE r.targetType = :targetType AND r.targetId = :targetId AND r.userId = :userId")
+    public int updateReaction(@Param("targetType") ReactionTarget targetType, @Param("targetId") Long targetId, @Param("userId") Long userId, @Param("reaction") ReactionType reaction);
+
+    @Modifying
+    @Query("DELETE FROM Reaction r WHERE r.targetType = :targetType AND r.targetId = :targetId AND r.userId = :userId")
+    public int deleteReaction(@Param("targetType") ReactionTarget targetType, @Param("targetId") Long targetId, @Param("userId") Long userId);
+
+    // Reactions of a user, read from the (user_id, target_type, target_id) index
+    @Query("SELECT new com.mainak.philia.dto.reaction.UserReactionDto(r.targetId, r.reaction) FROM Reaction r WHERE r.userId = :userId AND r.targetType = :targetType AND r.targetId IN :targetIds")
+    public List<UserReactionDto> findUserReactions(@Param("userId") Long userId, @Param("targetType") ReactionTarget targetType, @Param("targetIds") Collection<Long> targetIds);
+
+    @Query("SELECT r.targetId FROM Reaction r WHERE r.userId = :userId AND r.targetType = :targetType")
+    public Set<Long> findAllReactedTargetIds(@Param("userId") Long userId, @Param("targetType") ReactionTarget targetType);
+
+    // Batches for the post purge and the account deletion, see PostPurgeService and AccountDeletionService
+    @Modifying
+    @Query(value = "DELETE FROM reactions WHERE target_type = :targetType AND target_id = :targetId LIMIT :limit", nativeQuery = true)
+    public int deleteByTarget(@Param("targetType") int targetType, @Param("targetId") Long targetId, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "DELETE FROM reactions WHERE target_type = :targetType AND target_id IN :targetIds LIMIT :limit", nativeQuery = true)
+    public int deleteByTargets(@Param("targetType") int targetType, @Param("targetIds") Collection<Long> targetIds, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM Reaction r WHERE r.targetType = :targetType AND r.targetId IN :targetIds")
+    public int deleteByTargets(@Param("targetType") ReactionTarget targetType, @Param("targetIds") Collection<Long> targetIds);
+
+    @Query("SELECT new com.mainak.philia.dto.reaction.UserReactionDto(r.targetId, r.reaction) FROM Reaction r WHERE r.userId = :userId AND r.targetType = :targetType")
+    public List<UserReactionDto> findReactionsByUserId(@Param("userId") Long userId, @Param("targetType") ReactionTarget targetType, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Reaction r WHERE r.userId = :userId AND r.targetType = :targetType AND r.targetId IN :targetIds")
+    public int deleteUserReactions(@Param("userId") Long userId, @Param("targetType") ReactionTarget targetType, @Param("targetIds") Collection<Long> targetIds);
+
+    // Copies likes from the old join tables as LIKE reactions, see LegacyLikeMigrationService.
+    // liked_at was added by a later mapping of the join tables, likes from databases that never had it get the time of the migration.
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO reactions (target_type, target_id, user_id, reaction, reacted_at) " +
+            "SELECT 0, l.post_id, l.user_id, 0, l.liked_at FROM post_likes l WHERE l.post_id BETWEEN :fromId AND :toId", nativeQuery = true)
+    public int copyPostLikes(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO reactions (target_type, target_id, user_id, reaction, reacted_at) " +
+            "SELECT 1, l.comment_id, l.user_id, 0, l.liked_at FROM comment_likes l WHERE l.comment_id BETWEEN :fromId AND :toId", nativeQuery = true)
+    public int copyCommentLikes(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO reactions (target_type, target_id, user_id, reaction, reacted_at) " +
+            "SELECT 0, l.post_id, l.user_id, 0, CURRENT_TIMESTAMP FROM post_likes l WHERE l.post_id BETWEEN :fromId AND :toId", nativeQuery = true)
+    public int copyUntimedPostLikes(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO reactions (target_type, target_id, user_id, reaction, reacted_at) " +
+            "SELECT 1, l.comment_id, l.user_id, 0, CURRENT_TIMESTAMP FROM comment_likes l WHERE l.comment_id BETWEEN :fromId AND :toId", nativeQuery = true)
+    public int copyUntimedCommentLikes(@Param("fromId") Long fromId, @Param("toId") Long toId);
+}
@@ -0,0 +1,48 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.model.TimelineEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface TimelineEntryRepository extends JpaRepository<TimelineEntry, Long> {
+    @Query("SELECT t FROM TimelineEntry t WHERE t.ownerId = :ownerId ORDER BY t.createdAt DESC, t.postId DESC")
+    public List<TimelineEntry> findTimelinePage(@Param("ownerId") Long ownerId, Pageable pageable);
+
+    @Query("SELECT t FROM TimelineEntry t WHERE t.ownerId = :ownerId AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.postId < :postId)) ORDER BY t.createdAt DESC, t.postId DESC")
+    public List<TimelineEntry> findTimelinePageBefore(@Param("ownerId") Long ownerId, @Param("createdAt") LocalDateTime createdAt, @Param("postId") Long postId, Pageable pageable);
+
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO timeline_entries (owner_id, post_id, author_id, created_at) VALUES (:ownerId, :postId, :authorId, :createdAt)", nativeQuery = true)
+    public int insertEntry(@Param("ownerId") Long ownerId, @Param("postId") Long postId, @Param("authorId") Long authorId, @Param("createdAt") LocalDateTime createdAt);
+
+    // Set-based fan-out: one statement writes the post into every friend's timeline, friends are read from both sides of friendships.
+    // Native, so the FRIENDS state is taken by ordinal.
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO timeline_entries (owner_id, post_id, author_id, created_at) " +
+            "SELECT fr.friend_id, :postId, :authorId, :createdAt FROM (SELECT f.user_b AS friend_id FROM friendships f WHERE f.user_a = :authorId AND f.state = :friends " +
+            "UNION ALL SELECT f.user_a FROM friendships f WHERE f.user_b = :authorId AND f.state = :friends) fr", nativeQuery = true)
+    public int fanOutToFriends(@Param("postId") Long postId, @Param("authorId") Long authorId, @Param("createdAt") LocalDateTime createdAt, @Param("friends") int friends);
+
+    @Modifying
+    @Query("DELETE FROM TimelineEntry t WHERE t.postId = :postId")
+    public int deleteAllByPostId(@Param("postId") Long postId);
+
+    // Two statements so each one is served by its own index, an OR of both columns scans and locks the whole table
+    @Modifying
+    @Query(value = "DELETE FROM timeline_entries WHERE owner_id = :ownerId LIMIT :limit", nativeQuery = true)
+    public int deleteByOwnerId(@Param("ownerId") Long ownerId, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "DELETE FROM timeline_entries WHERE author_id = :authorId LIMIT :limit", nativeQuery = true)
+    public int deleteByAuthorId(@Param("authorId") Long authorId, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM TimelineEntry t WHERE (t.ownerId = :userId AND t.authorId = :friendId) OR (t.ownerId = :friendId AND t.authorId = :userId)")
+    public int deleteAllBetweenUsers(@Param("userId") Long userId, @Param("friendId") Long friendId);
+}
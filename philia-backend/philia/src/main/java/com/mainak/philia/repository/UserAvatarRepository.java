@@ -0,0 +1,16 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.model.UserAvatar;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface UserAvatarRepository extends JpaRepository<UserAvatar, Long> {
+    @Query("SELECT a.image FROM UserAvatar a WHERE a.id = :id")
+    public byte[] findImageById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE UserAvatar a SET a.image = NULL WHERE a.id = :id")
+    public int clearImage(@Param("id") Long id);
+}
@@ -1,16 +1,88 @@
 package com.mainak.philia.repository;
 
+import com.mainak.philia.dto.app.ImageMetadataDto;
+import com.mainak.philia.dto.user.UserProjection;
 import com.mainak.philia.model.User;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
-    @Query("SELECT u FROM User u WHERE LOWER(CONCAT(u.firstName, ' ', u.lastName)) LIKE LOWER(CONCAT('%', :keyword, '%'))")
+    String USER_PROJECTION = "SELECT new com.mainak.philia.dto.user.UserProjection(" +
+            "u.id, u.firstName, u.lastName, CASE WHEN u.profileImageKey IS NOT NULL OR u.hasLegacyProfileImage = true THEN true ELSE false END, u.profileImageKey) FROM User u ";
+    // Active users the user has no friendship or pending request with, one NOT EXISTS lookup on the primary key of friendships
+    String SUGGESTION_CANDIDATES = USER_PROJECTION + "WHERE u.deletedAt IS NULL AND u.id <> :userId " +
+            "AND NOT EXISTS (SELECT 1 FROM Friendship f WHERE f.userA = LEAST(u.id, :userId) AND f.userB = GREATEST(u.id, :userId)) ";
+
+    // API reads leave out users whose account is being deleted (deletedAt set)
+    @Query("SELECT u FROM User u WHERE u.deletedAt IS NULL AND LOWER(CONCAT(u.firstName, ' ', u.lastName)) LIKE LOWER(CONCAT('%', :keyword, '%'))")
     public List<User> searchUsersByKeyword(@Param("keyword") String keyword);
     public boolean existsByEmail(String email);
-    public Optional<User> findByEmail(String email);
+
+    @Query("SELECT u FROM User u WHERE u.email = :email AND u.deletedAt IS NULL")
+    public Optional<User> findByEmail(@Param("email") String email);
+
+    @Query("SELECT u FROM User u WHERE u.id = :id AND u.deletedAt IS NULL")
+    public Optional<User> findActiveById(@Param("id") Long id);
+
+    @Query("SELECT COUNT(u) > 0 FROM User u WHERE u.id = :id AND u.deletedAt IS NULL")
+    public boolean existsActiveById(@Param("id") Long id);
+
+    @Query("SELECT u FROM User u WHERE u.deletedAt IS NULL")
+    public List<User> findAllActive();
+
+    public List<User> findTop20ByHasLegacyProfileImageIsTrueAndProfileImageKeyIsNull();
+
+    @Query("SELECT new com.mainak.philia.dto.app.ImageMetadataDto(u.profileImageKey, u.profileImageType, u.hasLegacyProfileImage) FROM User u WHERE u.id = :id AND u.deletedAt IS NULL")
+    public Optional<ImageMetadataDto> findProfileImageMetadataById(@Param("id") Long id);
+
+    @Query(USER_PROJECTION + "WHERE u.id IN :ids AND u.deletedAt IS NULL")
+    public List<UserProjection> findProjectionsByIds(@Param("ids") Collection<Long> ids);
+
+    // Friend suggestion samples for FriendSuggestionSampler, both read from the id index and stop after the page size
+    @Query(SUGGESTION_CANDIDATES + "ORDER BY u.id DESC")
+    public List<UserProjection> findRecentSuggestionCandidates(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(SUGGESTION_CANDIDATES + "AND u.id BETWEEN :fromId AND :toId ORDER BY u.id")
+    public List<UserProjection> findSuggestionCandidatesInRange(@Param("userId") Long userId, @Param("fromId") Long fromId, @Param("toId") Long toId, Pageable pageable);
+
+    @Query("SELECT MAX(u.id) FROM User u")
+    public Long findMaxId();
+
+    @Query("SELECT u.friendsCount FROM User u WHERE u.id = :id")
+    public Optional<Long> findFriendsCountById(@Param("id") Long id);
+
+    // Both users of an accepted or removed friendship, IN locks the rows in id order
+    @Modifying
+    @Query("UPDATE User u SET u.friendsCount = u.friendsCount + :delta WHERE u.id IN :ids")
+    public int addToFriendsCount(@Param("ids") Collection<Long> ids, @Param("delta") long delta);
+
+    // Must run before the friendships of the user with the otherIds are deleted, only the friends among them are decremented
+    @Modifying
+    @Query("UPDATE User u SET u.friendsCount = u.friendsCount - 1 WHERE u.id IN :otherIds AND u.id IN " +
+            "(SELECT " + FriendshipRepository.OTHER_USER + " FROM Friendship f WHERE " + FriendshipRepository.OF_USER + "AND f.state = " + FriendshipRepository.FRIENDS + ")")
+    public int decrementFriendsCountOfFriends(@Param("userId") Long userId, @Param("otherIds") Collection<Long> otherIds);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE users u SET u.friends_count = " +
+            "(SELECT COUNT(*) FROM friendships f WHERE f.user_a = u.id AND f.state = :friends) + (SELECT COUNT(*) FROM friendships f WHERE f.user_b = u.id AND f.state = :friends) " +
+            "WHERE u.id BETWEEN :fromId AND :toId", nativeQuery = true)
+    public int reconcileFriendsCounts(@Param("fromId") Long fromId, @Param("toId") Long toId, @Param("friends") int friends);
+
+    @Modifying
+    @Query("UPDATE User u SET u.deletedAt = :deletedAt WHERE u.id = :id")
+    public int markDeleted(@Param("id") Long id, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying
+    @Query("DELETE FROM User u WHERE u.id = :id")
+    public int deleteUserRowById(@Param("id") Long id);
 }
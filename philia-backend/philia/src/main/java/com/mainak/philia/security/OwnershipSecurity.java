@@ -18,7 +18,7 @@ public class OwnershipSecurity {
     private final NotificationRepository notificationRepository;
 
 
-    // For - updateUser, sendFriendRequest, acceptFriendRequest, rejectFriendRequest, cancelFriendRequest, removeFriend, deleteUserById, likePost, removeLikeFromPost, likeComment, removeLikeFromComment
+    // For - updateUser, sendFriendRequest, acceptFriendRequest, rejectFriendRequest, cancelFriendRequest, removeFriend, deleteUserById, reactToPost, removeReactionFromPost, reactToComment, removeReactionFromComment
     public boolean isSameUser(Long receivedUserId, String expectedUserEmail){
         Long expectedUserId = userRepository.findByEmail(expectedUserEmail).orElseThrow(
                 () -> new AppException("User not found with email: " + expectedUserEmail, HttpStatus.NOT_FOUND))
@@ -0,0 +1,211 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.post.PostDeletedEvent;
+import com.mainak.philia.dto.reaction.UserReactionDto;
+import com.mainak.philia.dto.user.AccountDeletionRequestedEvent;
+import com.mainak.philia.enums.AccountDeletionStep;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.model.AccountDeletionJob;
+import com.mainak.philia.repository.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Deletes accounts in the background: the user is hidden at once, then every AccountDeletionStep removes its rows in bounded batches
+@Slf4j
+@Service
+public class AccountDeletionService {
+    private static final int BATCH_SIZE = 500;
+
+    private final UserRepository userRepo;
+    private final PostRepository postRepo;
+    private final CommentRepository commentRepo;
+    private final ReactionRepository reactionRepo;
+    private final ReactionCountRepository reactionCountRepo;
+    private final TimelineEntryRepository timelineRepo;
+    private final NotificationRepository notificationRepo;
+    private final FriendshipRepository friendshipRepo;
+    private final AccountDeletionJobRepository jobRepo;
+    private final PostPurgeService postPurgeService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    // Users whose job is running on this instance, so a resumed job and a new request don't run side by side
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+
+    public AccountDeletionService(UserRepository userRepo, PostRepository postRepo, CommentRepository commentRepo, ReactionRepository reactionRepo,
+                                  ReactionCountRepository reactionCountRepo, TimelineEntryRepository timelineRepo, NotificationRepository notificationRepo,
+                                  FriendshipRepository friendshipRepo, AccountDeletionJobRepository jobRepo, PostPurgeService postPurgeService,
+                                  ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
+        this.userRepo = userRepo;
+        this.postRepo = postRepo;
+        this.commentRepo = commentRepo;
+        this.reactionRepo = reactionRepo;
+        this.reactionCountRepo = reactionCountRepo;
+        this.timelineRepo = timelineRepo;
+        this.notificationRepo = notificationRepo;
+        this.friendshipRepo = friendshipRepo;
+        this.jobRepo = jobRepo;
+        this.postPurgeService = postPurgeService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Must run in the caller's transaction, the purge starts once it commits
+    public void requestDeletion(Long userId) {
+        userRepo.markDeleted(userId, LocalDateTime.now());
+        AccountDeletionJob job = new AccountDeletionJob();
+        job.setUserId(userId);
+        jobRepo.save(job);
+        eventPublisher.publishEvent(new AccountDeletionRequestedEvent(userId));
+    }
+
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDeletionRequested(AccountDeletionRequestedEvent event) {
+        runJob(event.getUserId());
+    }
+
+    // Picks up jobs interrupted by a restart from their last checkpoint
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        jobRepo.findUnfinishedUserIds().forEach(this::runJob);
+    }
+
+    private void runJob(Long userId) {
+        if(!runningJobs.add(userId)){
+            return;
+        }
+        try{
+            AccountDeletionJob job = jobRepo.findById(userId).orElse(null);
+            if(job == null){
+                return;
+            }
+            long rowsDeleted = job.getRowsDeleted();
+            AccountDeletionStep step = job.getStep();
+            while(step != AccountDeletionStep.DONE){
+                int batch;
+                do{
+                    batch = runBatch(userId, step);
+                    rowsDeleted += batch;
+                } while(batch > 0);
+
+                AccountDeletionStep next = AccountDeletionStep.values()[step.ordinal() + 1];
+                LocalDateTime finishedAt = next == AccountDeletionStep.DONE ? LocalDateTime.now() : null;
+                transactionTemplate.execute(status -> jobRepo.updateStep(userId, next, finishedAt));
+                log.info("Account deletion of user id: {}, step {} done, rows deleted so far: {}", userId, step, rowsDeleted);
+                step = next;
+            }
+        } catch (Exception e){
+            log.error("Account deletion of user id: {} failed, it resumes on the next start, errorMessage: {}", userId, e.getMessage());
+        } finally{
+            runningJobs.remove(userId);
+        }
+    }
+
+    // Deletes one batch of the step and records it on the job in the same transaction, returns 0 once the step has nothing left
+    private int runBatch(Long userId, AccountDeletionStep step) {
+        if(step == AccountDeletionStep.POSTS){
+            // Each post is purged in its own chunked transactions, see PostPurgeService
+            List<Long> postIds = postRepo.findIdsByUserId(userId, PageRequest.of(0, BATCH_SIZE));
+            int rows = 0;
+            for(Long postId : postIds){
+                rows += postPurgeService.purgeInChunks(postId);
+            }
+            int deleted = rows;
+            transactionTemplate.execute(status -> {
+                // Delivered once this transaction commits, so the trending index stops serving the posts
+                postIds.forEach(postId -> eventPublisher.publishEvent(new PostDeletedEvent(postId)));
+                return jobRepo.addRowsDeleted(userId, deleted);
+            });
+            return deleted;
+        }
+
+        return transactionTemplate.execute(status -> {
+            int rows = switch(step){
+                case RELATIONS -> deleteFriendshipBatch(userId)
+                        + timelineRepo.deleteByOwnerId(userId, BATCH_SIZE)
+                        + timelineRepo.deleteByAuthorId(userId, BATCH_SIZE)
+                        + notificationRepo.deleteByRecipientId(userId, BATCH_SIZE);
+                case POST_LIKES -> deletePostLikeBatch(userId);
+                case COMMENT_LIKES -> deleteCommentLikeBatch(userId);
+                case COMMENTS -> deleteCommentBatch(userId);
+                case USER -> userRepo.deleteUserRowById(userId);
+                default -> 0;
+            };
+            jobRepo.addRowsDeleted(userId, rows);
+            return rows;
+        });
+    }
+
+    // Friends lose the user from their friends count in the transaction that deletes their friendships.
+    // Only deleted rows are counted, not the rows of the counter updates.
+    private int deleteFriendshipBatch(Long userId) {
+        List<Long> otherIds = friendshipRepo.findRelatedUserIds(userId, PageRequest.of(0, BATCH_SIZE));
+        if(otherIds.isEmpty()){
+            return 0;
+        }
+        userRepo.decrementFriendsCountOfFriends(userId, otherIds);
+        return friendshipRepo.deleteByUserIdAndOtherIds(userId, otherIds);
+    }
+
+    // Reactions and comments are taken off the counters of the rows they belonged to before they are deleted
+    private int deletePostLikeBatch(Long userId) {
+        List<UserReactionDto> reactions = reactionRepo.findReactionsByUserId(userId, ReactionTarget.POST, PageRequest.of(0, BATCH_SIZE));
+        if(reactions.isEmpty()){
+            return 0;
+        }
+        List<Long> postIds = reactions.stream().map(UserReactionDto::getTargetId).toList();
+        postRepo.decrementLikesCount(postIds);
+        decrementReactionCounts(ReactionTarget.POST, reactions);
+        return reactionRepo.deleteUserReactions(userId, ReactionTarget.POST, postIds);
+    }
+
+    private int deleteCommentLikeBatch(Long userId) {
+        List<UserReactionDto> reactions = reactionRepo.findReactionsByUserId(userId, ReactionTarget.COMMENT, PageRequest.of(0, BATCH_SIZE));
+        if(reactions.isEmpty()){
+            return 0;
+        }
+        List<Long> commentIds = reactions.stream().map(UserReactionDto::getTargetId).toList();
+        commentRepo.decrementLikesCount(commentIds);
+        decrementReactionCounts(ReactionTarget.COMMENT, reactions);
+        return reactionRepo.deleteUserReactions(userId, ReactionTarget.COMMENT, commentIds);
+    }
+
+    // One UPDATE per reaction type in the batch, a user has at most one reaction per post/comment
+    private void decrementReactionCounts(ReactionTarget target, List<UserReactionDto> reactions) {
+        reactions.stream()
+                .collect(Collectors.groupingBy(UserReactionDto::getReaction, Collectors.mapping(UserReactionDto::getTargetId, Collectors.toList())))
+                .forEach((reaction, targetIds) -> reactionCountRepo.decrementCounts(target, reaction, targetIds));
+    }
+
+    private int deleteCommentBatch(Long userId) {
+        List<Long> commentIds = commentRepo.findIdsByUserId(userId, PageRequest.of(0, BATCH_SIZE));
+        if(commentIds.isEmpty()){
+            return 0;
+        }
+        // The reactions on the comments are deleted first, a batch at a time, a batch of comments can have any number of them
+        int reactions = reactionRepo.deleteByTargets(ReactionTarget.COMMENT.ordinal(), commentIds, BATCH_SIZE);
+        if(reactions > 0){
+            return reactions;
+        }
+        postRepo.decrementCommentsCountForComments(commentIds);
+        int reactionCounts = reactionCountRepo.deleteByTargetIds(ReactionTarget.COMMENT, commentIds);
+        commentRepo.deleteAllByIdInBatch(commentIds);
+        return reactionCounts + commentIds.size();
+    }
+}
@@ -1,48 +1,145 @@
 package com.mainak.philia.service;
 
+import com.mainak.philia.dto.app.CursorPageDto;
 import com.mainak.philia.dto.comment.CommentCreateDto;
 import com.mainak.philia.dto.comment.CommentDto;
+import com.mainak.philia.dto.comment.CommentNotificationTarget;
+import com.mainak.philia.dto.comment.CommentProjection;
 import com.mainak.philia.dto.comment.CommentUpdateDto;
+import com.mainak.philia.dto.comment.UserCommentDto;
 import com.mainak.philia.dto.notification.PhiliaEvent;
+import com.mainak.philia.dto.post.PostEngagementEvent;
+import com.mainak.philia.dto.user.LikerProjection;
+import com.mainak.philia.dto.user.LikersPageDto;
 import com.mainak.philia.dto.user.UserDto;
+import com.mainak.philia.enums.EngagementCounter;
 import com.mainak.philia.enums.PhiliaEventType;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
 import com.mainak.philia.exception.AppException;
 import com.mainak.philia.model.Comment;
 import com.mainak.philia.model.Post;
 import com.mainak.philia.model.User;
 import com.mainak.philia.repository.CommentRepository;
 import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.ReactionCountRepository;
+import com.mainak.philia.repository.ReactionRepository;
 import com.mainak.philia.repository.UserRepository;
+import com.mainak.philia.utils.CursorUtils;
+import com.mainak.philia.utils.SecurityUtils;
 import com.mainak.philia.utils.mapper.CommentMapper;
 import com.mainak.philia.utils.mapper.UserMapper;
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @AllArgsConstructor
 public class CommentService {
+    // Friends shown above the likers list, as in "liked by A, B and C"
+    private static final int FRIEND_LIKERS_COUNT = 3;
+
     private final CommentRepository repo;
+    private final ReactionRepository reactionRepo;
+    private final ReactionCountRepository reactionCountRepo;
     private final PostRepository postRepo;
     private final UserRepository userRepository;
     private final ApplicationEventPublisher eventPublisher;
+    private final EngagementCounterBuffer engagementCounterBuffer;
+    private final ReactionService reactionService;
+    private final EngagementMutationService engagementMutationService;
 
     public ResponseEntity<List<CommentDto>> getCommentsByPostId(Long postId){
-        List<CommentDto> comments = repo.findAllByPostIdOrderByCreatedAtDesc(postId).stream().map(CommentMapper::mapToCommentDto).toList();
-        return ResponseEntity.ok(comments);
+        List<CommentDto> comments = repo.findProjectionsByPostId(postId).stream().map(CommentMapper::mapToCommentDto).toList();
+        return ResponseEntity.ok(reactionService.withCommentReactions(engagementCounterBuffer.withPendingComments(comments)));
+    }
+
+    public ResponseEntity<CursorPageDto<CommentDto>> getCommentPageByPostId(Long postId, String cursor, Integer size){
+        if(!postRepo.existsById(postId)){
+            throw new AppException("Post not found with id: " + postId, HttpStatus.NOT_FOUND);
+        }
+        int pageSize = CursorUtils.resolvePageSize(size);
+        // Fetch one extra row to know whether there is a next page
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+
+        List<CommentProjection> comments;
+        if(CursorUtils.isFirstPage(cursor)){
+            comments = repo.findPageByPostId(postId, pageable);
+        } else{
+            CursorUtils.TimeCursor timeCursor = CursorUtils.decodeTimeCursor(cursor);
+            comments = repo.findPageByPostIdBefore(postId, timeCursor.createdAt(), timeCursor.id(), pageable);
+        }
+
+        boolean hasNext = comments.size() > pageSize;
+        List<CommentProjection> page = hasNext ? comments.subList(0, pageSize) : comments;
+
+        String next = null;
+        if(hasNext){
+            CommentProjection last = page.get(page.size() - 1);
+            next = CursorUtils.encodeTimeCursor(last.getCreatedAt(), last.getId());
+        }
+
+        List<CommentDto> commentDtos = page.stream().map(CommentMapper::mapToCommentDto).toList();
+        return ResponseEntity.ok(new CursorPageDto<>(reactionService.withCommentReactions(engagementCounterBuffer.withPendingComments(commentDtos)), next));
     }
 
     public ResponseEntity<List<CommentDto>> getCommentsByUserId(Long userId){
-        List<CommentDto> comments = repo.findAllByUserId(userId).stream().map(CommentMapper::mapToCommentDto).toList();
-        return ResponseEntity.ok(comments);
+        List<CommentDto> comments = repo.findProjectionsByUserId(userId).stream().map(CommentMapper::mapToCommentDto).toList();
+        return ResponseEntity.ok(engagementCounterBuffer.withPendingComments(comments));
+    }
+
+    public ResponseEntity<CursorPageDto<UserCommentDto>> getCommentPageByUserId(Long userId, String cursor, Integer size){
+        if(!userRepository.existsActiveById(userId)){
+            throw new AppException("User not found with id: " + userId, HttpStatus.NOT_FOUND);
+        }
+        int pageSize = CursorUtils.resolvePageSize(size);
+        // Fetch one extra row to know whether there is a next page
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+
+        List<CommentProjection> comments;
+        if(CursorUtils.isFirstPage(cursor)){
+            comments = repo.findPageByUserId(userId, pageable);
+        } else{
+            CursorUtils.TimeCursor timeCursor = CursorUtils.decodeTimeCursor(cursor);
+            comments = repo.findPageByUserIdBefore(userId, timeCursor.createdAt(), timeCursor.id(), pageable);
+        }
+
+        boolean hasNext = comments.size() > pageSize;
+        List<CommentProjection> page = hasNext ? comments.subList(0, pageSize) : comments;
+
+        String next = null;
+        if(hasNext){
+            CommentProjection last = page.get(page.size() - 1);
+            next = CursorUtils.encodeTimeCursor(last.getCreatedAt(), last.getId());
+        }
+
+        // One IN query for the titles of all posts on the page instead of loading each post
+        Map<Long, String> postTitles = new HashMap<>();
+        Set<Long> postIds = page.stream().map(CommentProjection::getPostId).collect(Collectors.toSet());
+        if(!postIds.isEmpty()){
+            postRepo.findTitlesByIds(postIds).forEach(postTitle -> postTitles.put(postTitle.getPostId(), postTitle.getTitle()));
+        }
+
+        List<UserCommentDto> commentDtos = page.stream()
+                .map(comment -> CommentMapper.mapToUserCommentDto(comment, postTitles.get(comment.getPostId())))
+                .toList();
+        commentDtos.forEach(engagementCounterBuffer::withPending);
+        reactionService.withCommentReactions(commentDtos);
+        return ResponseEntity.ok(new CursorPageDto<>(commentDtos, next));
     }
 
     public ResponseEntity<CommentDto> getCommentById(Long id){
@@ -50,15 +147,53 @@ public class CommentService {
                 new AppException("Comment not found with id: " + id, HttpStatus.NOT_FOUND));
 
         CommentDto commentDto = CommentMapper.mapToCommentDto(comment);
-        return ResponseEntity.ok(commentDto);
+        return ResponseEntity.ok(reactionService.withReactions(engagementCounterBuffer.withPending(commentDto)));
     }
 
     public ResponseEntity<List<UserDto>> getLikesByCommentId(Long commentId) {
-        Comment comment = repo.findById(commentId).orElseThrow(() -> new AppException("Post not found with id: " + commentId, HttpStatus.NOT_FOUND));
-        List<UserDto> likedUsers = comment.getLikes().stream().map(UserMapper::mapToUserDto).toList();
+        if(!repo.existsById(commentId)){
+            throw new AppException("Comment not found with id: " + commentId, HttpStatus.NOT_FOUND);
+        }
+        List<UserDto> likedUsers = reactionRepo.findLikers(ReactionTarget.COMMENT, commentId).stream().map(UserMapper::mapToUserDto).toList();
         return ResponseEntity.ok(likedUsers);
     }
 
+    public ResponseEntity<LikersPageDto> getLikersPageByCommentId(Long commentId, String cursor, Integer size) {
+        // The denormalized counter is the total, so no COUNT(*) over the reactions
+        Long likesCount = repo.findLikesCountById(commentId).orElseThrow(() -> new AppException("Comment not found with id: " + commentId, HttpStatus.NOT_FOUND));
+        int pageSize = CursorUtils.resolvePageSize(size);
+        // Fetch one extra row to know whether there is a next page
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+
+        List<LikerProjection> likers;
+        List<UserDto> friends = null;
+        if(CursorUtils.isFirstPage(cursor)){
+            likers = reactionRepo.findLikersPage(ReactionTarget.COMMENT, commentId, pageable);
+            Long viewerId = SecurityUtils.currentUserId();
+            if(viewerId != null){
+                friends = reactionRepo.findFriendLikers(ReactionTarget.COMMENT, commentId, viewerId, PageRequest.of(0, FRIEND_LIKERS_COUNT)).stream()
+                        .map(UserMapper::mapToUserDto)
+                        .toList();
+            }
+        } else{
+            CursorUtils.TimeCursor timeCursor = CursorUtils.decodeTimeCursor(cursor);
+            likers = reactionRepo.findLikersPageBefore(ReactionTarget.COMMENT, commentId, timeCursor.createdAt(), timeCursor.id(), pageable);
+        }
+
+        boolean hasNext = likers.size() > pageSize;
+        List<LikerProjection> page = hasNext ? likers.subList(0, pageSize) : likers;
+
+        String next = null;
+        if(hasNext){
+            LikerProjection last = page.get(page.size() - 1);
+            next = CursorUtils.encodeTimeCursor(last.getLikedAt(), last.getUserId());
+        }
+
+        List<UserDto> items = page.stream().map(UserMapper::mapToUserDto).toList();
+        long totalCount = likesCount + engagementCounterBuffer.pending(EngagementCounter.COMMENT_LIKES, commentId);
+        return ResponseEntity.ok(new LikersPageDto(items, next, totalCount, friends));
+    }
+
     @PreAuthorize(
             "@ownerShipSecurity.isSameUser(#dto.userId, authentication.name)"
     )
@@ -66,13 +201,17 @@ public class CommentService {
     public ResponseEntity<CommentDto> addCommentToPost(CommentCreateDto dto){
         User user = userRepository.findById(dto.getUserId()).orElseThrow(() ->
                 new AppException("User not found with id: " + dto.getUserId(), HttpStatus.NOT_FOUND));
-        Post post = postRepo.findById(dto.getPostId()).orElseThrow(() ->
-                new AppException("Post not found with id: " + dto.getPostId(), HttpStatus.NOT_FOUND));
+        Post post = postRepo.findById(dto.getPostId())
+                .filter(found -> !found.isPendingDeletion())
+                .orElseThrow(() -> new AppException("Post not found with id: " + dto.getPostId(), HttpStatus.NOT_FOUND));
 
         Comment comment = CommentMapper.mapToCommentFromCommentCreateDto(dto, post, user);
         Comment savedComment = repo.save(comment);
         CommentDto commentDto = CommentMapper.mapToCommentDto(savedComment);
 
+        engagementCounterBuffer.record(EngagementCounter.POST_COMMENTS, post.getId(), 1);
+        eventPublisher.publishEvent(new PostEngagementEvent(post.getId(), 1));
+
         // If the commenter is not the post owner, send notification
         if(!post.getUser().getId().equals(user.getId())){
             PhiliaEvent postCommentEvent = PhiliaEvent
@@ -98,57 +237,63 @@ public class CommentService {
         Comment comment = repo.findById(dto.getId()).orElseThrow(() ->
                 new AppException("Comment not found with id: " + dto.getId(), HttpStatus.NOT_FOUND));
         Comment updatedComment = CommentMapper.updateCommentFromCommentUpdateDto(comment, dto);
-        CommentDto commentDto = CommentMapper.mapToCommentDto(updatedComment);
+        CommentDto commentDto = reactionService.withReactions(engagementCounterBuffer.withPending(CommentMapper.mapToCommentDto(updatedComment)));
 
         log.info("Comment updated with id: {}", dto.getId());
         return ResponseEntity.ok(commentDto);
     }
 
+    // Adds or changes the reaction of the user, a like is the LIKE reaction.
+    // Not @Transactional, EngagementMutationService runs it in a transaction it can retry on deadlocks
     @PreAuthorize(
             "@ownerShipSecurity.isSameUser(#userId, authentication.name)"
     )
-    @Transactional
-    public boolean likeComment(Long commentId, Long userId){
-        Comment comment = repo.findById(commentId).orElseThrow(() ->
-                new AppException("Comment not found with id: " + commentId, HttpStatus.NOT_FOUND));
-        User user = userRepository.findById(userId).orElseThrow(() ->
-                new AppException("User not found with id: " + userId, HttpStatus.NOT_FOUND));
+    public boolean reactToComment(Long commentId, Long userId, ReactionType reaction){
+        return engagementMutationService.execute(() -> {
+            CommentNotificationTarget target = repo.findNotificationTargetById(commentId).orElseThrow(() ->
+                    new AppException("Comment not found with id: " + commentId, HttpStatus.NOT_FOUND));
 
-        comment.addLike(user);
-        user.getLikedComments().add(comment);
+            // The user was checked by @PreAuthorize, so neither side has to be loaded
+            ReactionType previous = engagementMutationService.react(ReactionTarget.COMMENT, commentId, userId, reaction);
+            if(previous != null){
+                // Already reacted, at most the type changed
+                return true;
+            }
 
-        // If the comment owner is not the same as the liker, send notification
-        if(!comment.getUser().getId().equals(user.getId())){
-            PhiliaEvent commentLikedEvent = PhiliaEvent
-                    .builder()
-                    .eventType(PhiliaEventType.COMMENT_LIKE)
-                    .recipientId(comment.getUser().getId())
-                    .notifierId(user.getId())
-                    .message(String.format(" liked your comment: \"%s\".", comment.getContent()))
-                    .link("/posts/" + comment.getPost().getId())
-                    .build();
-            eventPublisher.publishEvent(commentLikedEvent);
-        }
+            // If the comment owner is not the same as the user who reacted, send notification
+            if(!target.getUserId().equals(userId)){
+                String verb = reaction == ReactionType.LIKE ? " liked" : String.format(" reacted with %s to", reaction.name().toLowerCase());
+                PhiliaEvent commentLikedEvent = PhiliaEvent
+                        .builder()
+                        .eventType(PhiliaEventType.COMMENT_LIKE)
+                        .recipientId(target.getUserId())
+                        .notifierId(userId)
+                        .message(String.format("%s your comment: \"%s\".", verb, target.getContent()))
+                        .link("/posts/" + target.getPostId())
+                        .build();
+                eventPublisher.publishEvent(commentLikedEvent);
+            }
 
-        log.info("Comment liked with id: {} by user with id: {}", commentId, userId);
-        return true;
+            log.info("Comment reacted to with id: {} by user with id: {}, reaction: {}", commentId, userId, reaction);
+            return true;
+        });
     }
 
     @PreAuthorize(
             "@ownerShipSecurity.isSameUser(#userId, authentication.name)"
     )
-    @Transactional
-    public boolean removeLikeFromComment(Long commentId, Long userId){
-        Comment comment = repo.findById(commentId).orElseThrow(() ->
-                new AppException("Comment not found with id: " + commentId, HttpStatus.NOT_FOUND));
-        User user = userRepository.findById(userId).orElseThrow(() ->
-                new AppException("User not found with id: " + userId, HttpStatus.NOT_FOUND));
+    public boolean removeReactionFromComment(Long commentId, Long userId){
+        return engagementMutationService.execute(() -> {
+            if(!repo.existsById(commentId)){
+                throw new AppException("Comment not found with id: " + commentId, HttpStatus.NOT_FOUND);
+            }
+            if(engagementMutationService.removeReaction(ReactionTarget.COMMENT, commentId, userId) == null){
+                throw new AppException("The user has not reacted to this comment", HttpStatus.BAD_REQUEST);
+            }
 
-        comment.removeLike(user);
-        user.getLikedComments().remove(comment);
-
-        log.info("Like removed from comment with id: {} by user with id: {}", commentId, userId);
-        return true;
+            log.info("Reaction removed from comment with id: {} by user with id: {}", commentId, userId);
+            return true;
+        });
     }
 
     @PreAuthorize(
@@ -158,9 +303,16 @@ public class CommentService {
     public ResponseEntity<Void> deleteCommentById(Long commentId){
         Comment comment = repo.findById(commentId).orElseThrow(() ->
                 new AppException("Comment not found with id: " + commentId, HttpStatus.NOT_FOUND));
+        Long postId = comment.getPost().getId();
         comment.getPost().removeComment(comment);
+        // Reactions are not mapped on the entity, so they are deleted with their own statements
+        reactionRepo.deleteByTargets(ReactionTarget.COMMENT, List.of(commentId));
+        reactionCountRepo.deleteByTargetIds(ReactionTarget.COMMENT, List.of(commentId));
         repo.delete(comment);
 
+        engagementCounterBuffer.record(EngagementCounter.POST_COMMENTS, postId, -1);
+        eventPublisher.publishEvent(new PostEngagementEvent(postId, -1));
+
         log.info("Comment deleted with id: {}", commentId);
         return ResponseEntity.noContent().build();
     }
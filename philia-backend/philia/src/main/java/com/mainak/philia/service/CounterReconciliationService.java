@@ -0,0 +1,87 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.enums.EngagementCounter;
+import com.mainak.philia.enums.FriendshipState;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.repository.AppliedMigrationRepository;
+import com.mainak.philia.repository.CommentRepository;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.ReactionCountRepository;
+import com.mainak.philia.repository.UserRepository;
+import com.mainak.philia.service.migration.LegacyFriendshipMigrationService;
+import com.mainak.philia.service.migration.LegacyLikeMigrationService;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.function.BiFunction;
+
+@Slf4j
+@Service
+@AllArgsConstructor
+public class CounterReconciliationService {
+    // Rows per UPDATE, each batch runs in its own short transaction
+    private static final long BATCH_SIZE = 1000;
+
+    private final PostRepository postRepo;
+    private final CommentRepository commentRepo;
+    private final ReactionCountRepository reactionCountRepo;
+    private final UserRepository userRepo;
+    private final EngagementCounterBuffer engagementCounterBuffer;
+    private final AppliedMigrationRepository appliedMigrationRepo;
+
+    // Repairs counter drift (e.g. from failed requests or manual DB edits) every night
+    @Scheduled(cron = "0 0 3 * * *")
+    public void reconcileCounters() {
+        // Leaves few journal rows for the recomputes to subtract
+        engagementCounterBuffer.flush();
+        int repairedPosts = 0;
+        int repairedComments = 0;
+        int repairedHistograms = 0;
+        // Until the legacy likes are copied the reactions hold only part of the likes, recomputing from them would lose the rest
+        if(appliedMigrationRepo.existsById(LegacyLikeMigrationService.NAME)){
+            repairedPosts = reconcileInBatches(postRepo.findMaxId(), journaled(postRepo::reconcileCounters));
+            repairedComments = reconcileInBatches(commentRepo.findMaxId(), journaled(commentRepo::reconcileCounters));
+            repairedHistograms = reconcileHistograms(ReactionTarget.POST, postRepo.findMaxId()) + reconcileHistograms(ReactionTarget.COMMENT, commentRepo.findMaxId());
+        } else{
+            log.warn("Legacy likes are not migrated yet, skipping the like and comment counters");
+        }
+        int repairedUsers = 0;
+        // Same for friends_count, it is computed from friendships
+        if(appliedMigrationRepo.existsById(LegacyFriendshipMigrationService.NAME)){
+            repairedUsers = reconcileInBatches(userRepo.findMaxId(), (fromId, toId) -> userRepo.reconcileFriendsCounts(fromId, toId, FriendshipState.FRIENDS.ordinal()));
+        } else{
+            log.warn("Legacy friendships are not migrated yet, skipping the friends counts");
+        }
+
+        log.info("Counter reconciliation finished, posts repaired: {}, comments repaired: {}, reaction counts repaired: {}, friends counts repaired: {}",
+                repairedPosts, repairedComments, repairedHistograms, repairedUsers);
+    }
+
+    // Recomputes the bars that still have reactions, then zeroes the ones whose reactions are all gone
+    private int reconcileHistograms(ReactionTarget target, Long maxId) {
+        int type = target.ordinal();
+        String counter = (target == ReactionTarget.POST ? EngagementCounter.POST_REACTIONS : EngagementCounter.COMMENT_REACTIONS).name();
+        return reconcileInBatches(maxId, journaled((fromId, toId) -> reactionCountRepo.reconcileCounts(type, counter, fromId, toId)))
+                + reconcileInBatches(maxId, journaled((fromId, toId) -> reactionCountRepo.clearUnusedCounts(type, counter, fromId, toId)));
+    }
+
+    // A like can commit between two batches, its row is then in the recomputed count while its delta is still journaled.
+    // The recomputes subtract the journal and run between flushes, see EngagementCounterBuffer.reconcile.
+    private BiFunction<Long, Long, Integer> journaled(BiFunction<Long, Long, Integer> reconcileRange) {
+        return (fromId, toId) -> engagementCounterBuffer.reconcile(() -> reconcileRange.apply(fromId, toId));
+    }
+
+    private int reconcileInBatches(Long maxId, BiFunction<Long, Long, Integer> reconcileRange) {
+        if(maxId == null){
+            return 0;
+        }
+        int repaired = 0;
+        for(long fromId = 1; fromId <= maxId; fromId += BATCH_SIZE){
+            // MySQL reports only the rows whose values actually changed
+            repaired += reconcileRange.apply(fromId, fromId + BATCH_SIZE - 1);
+        }
+        return repaired;
+    }
+}
@@ -0,0 +1,156 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.comment.CommentDto;
+import com.mainak.philia.dto.post.PostDto;
+import com.mainak.philia.enums.EngagementCounter;
+import com.mainak.philia.enums.ReactionType;
+import com.mainak.philia.model.EngagementDelta;
+import com.mainak.philia.repository.EngagementDeltaRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+// Write-behind buffer for the like/comment counters: a like appends a journal row instead of updating the (possibly very hot) post row,
+// and the journal is applied in batches. Reads add the committed but not yet applied deltas held in memory.
+// Assumes a single application instance: the pending deltas only know the likes committed through this JVM, and the journal
+// is applied under this instance's lock, so other instances would read stale counts and could apply the journal concurrently.
+@Slf4j
+@Service
+public class EngagementCounterBuffer {
+    // reaction is only set for the per-reaction counters
+    private record Key(EngagementCounter counter, Long targetId, ReactionType reaction) {}
+
+    private final EngagementDeltaRepository repo;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // Committed deltas not yet applied to the counters, entries are dropped as soon as they reach 0
+    private final ConcurrentHashMap<Key, Long> pendingDeltas = new ConcurrentHashMap<>();
+
+    public EngagementCounterBuffer(EngagementDeltaRepository repo, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.repo = repo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Deltas journaled before a crash or restart are not in memory, apply them before serving any request
+    @PostConstruct
+    public void recover() {
+        int applied = applyJournal(false);
+        if(applied > 0){
+            log.info("Recovered {} journaled counter changes", applied);
+        }
+    }
+
+    // Must be called inside the transaction that changed the likes/comments, so the journal row commits or rolls back with it
+    public void record(EngagementCounter counter, Long targetId, long delta) {
+        record(counter, targetId, null, delta);
+    }
+
+    public void record(EngagementCounter counter, Long targetId, ReactionType reaction, long delta) {
+        repo.save(new EngagementDelta(null, counter, targetId, reaction, delta));
+
+        Key key = new Key(counter, targetId, reaction);
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            addPending(key, delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                addPending(key, delta);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${philia.engagement.flush-interval-ms:500}")
+    public void flush() {
+        applyJournal(true);
+    }
+
+    // Runs a recompute of counters from their source rows between two flushes, so the flush and the recompute don't take the journal
+    // and counter row locks in opposite order. The recompute must subtract the journal rows it finds, they are applied by the next flush.
+    public synchronized int reconcile(IntSupplier recompute) {
+        return recompute.getAsInt();
+    }
+
+    public long pending(EngagementCounter counter, Long targetId) {
+        return pending(counter, targetId, null);
+    }
+
+    public long pending(EngagementCounter counter, Long targetId, ReactionType reaction) {
+        return pendingDeltas.getOrDefault(new Key(counter, targetId, reaction), 0L);
+    }
+
+    // Adds the pending deltas to freshly mapped DTOs, must not be used on cached DTOs
+    public List<PostDto> withPendingPosts(List<PostDto> posts) {
+        posts.forEach(this::withPending);
+        return posts;
+    }
+
+    public PostDto withPending(PostDto post) {
+        post.setLikesCount(post.getLikesCount() + pending(EngagementCounter.POST_LIKES, post.getId()));
+        post.setCommentsCount(post.getCommentsCount() + pending(EngagementCounter.POST_COMMENTS, post.getId()));
+        return post;
+    }
+
+    public List<CommentDto> withPendingComments(List<CommentDto> comments) {
+        comments.forEach(this::withPending);
+        return comments;
+    }
+
+    public CommentDto withPending(CommentDto comment) {
+        comment.setLikesCount(comment.getLikesCount() + pending(EngagementCounter.COMMENT_LIKES, comment.getId()));
+        return comment;
+    }
+
+    private void addPending(Key key, long delta) {
+        // Returning null removes the entry, so ids that are no longer liked don't stay in the map
+        pendingDeltas.merge(key, delta, (current, added) -> current + added == 0 ? null : current + added);
+    }
+
+    private synchronized int applyJournal(boolean buffered) {
+        Map<Key, Long> applied = transactionTemplate.execute(status -> {
+            Long maxId = repo.findMaxId();
+            if(maxId == null){
+                return Map.of();
+            }
+            List<EngagementDelta> deltas = repo.findAllByIdLessThanEqual(maxId);
+
+            Map<Key, Long> sums = new HashMap<>();
+            for(EngagementDelta delta : deltas){
+                sums.merge(new Key(delta.getCounter(), delta.getTargetId(), delta.getReaction()), delta.getDelta(), Long::sum);
+            }
+            for(EngagementCounter counter : EngagementCounter.values()){
+                List<Object[]> args = sums.entrySet().stream()
+                        .filter(entry -> entry.getKey().counter() == counter && entry.getValue() != 0)
+                        .map(entry -> counter.isPerReaction()
+                                ? new Object[]{entry.getValue(), entry.getKey().targetId(), entry.getKey().reaction().ordinal()}
+                                : new Object[]{entry.getValue(), entry.getKey().targetId()})
+                        .toList();
+                if(!args.isEmpty()){
+                    jdbcTemplate.batchUpdate(counter.getIncrementSql(), args);
+                }
+            }
+            repo.deleteAllByIdInBatch(deltas.stream().map(EngagementDelta::getId).toList());
+            return sums;
+        });
+
+        if(buffered){
+            // Now part of the persisted counters
+            applied.forEach((key, delta) -> addPending(key, -delta));
+        }
+        return applied.size();
+    }
+}
@@ -0,0 +1,122 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.post.PostEngagementEvent;
+import com.mainak.philia.enums.EngagementCounter;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
+import com.mainak.philia.model.Reaction;
+import com.mainak.philia.repository.ReactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+// Reactions as single INSERT IGNORE/UPDATE/DELETE statements on the reactions table, the totals and histograms go through the EngagementCounterBuffer.
+// Concurrent reactions on a hot post still lock the same index ranges, so a transaction picked as deadlock victim is retried.
+@Slf4j
+@Service
+public class EngagementMutationService {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MS = 10;
+
+    private final ReactionRepository reactionRepo;
+    private final EngagementCounterBuffer engagementCounterBuffer;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    public EngagementMutationService(ReactionRepository reactionRepo, EngagementCounterBuffer engagementCounterBuffer,
+                                     ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
+        this.reactionRepo = reactionRepo;
+        this.engagementCounterBuffer = engagementCounterBuffer;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Runs the mutation in its own transaction, retrying it when the database aborted it on a deadlock or lock wait timeout.
+    // Events published by the mutation are only delivered for the attempt that commits.
+    public <T> T execute(Supplier<T> mutation) {
+        if(TransactionSynchronizationManager.isActualTransactionActive()){
+            // The caller owns the transaction, which is rolled back as a whole, so it can't be retried from here
+            return mutation.get();
+        }
+        for(int attempt = 1; ; attempt++){
+            try{
+                return transactionTemplate.execute(status -> mutation.get());
+            } catch (PessimisticLockingFailureException e){
+                if(attempt == MAX_ATTEMPTS || !backOff(attempt)){
+                    throw e;
+                }
+                log.warn("Engagement mutation aborted by lock contention, attempt: {}, errorMessage: {}", attempt, e.getMessage());
+            }
+        }
+    }
+
+    // The methods below must run inside execute
+
+    // Adds the reaction of the user or changes its type, returns the previous reaction, null when the user had not reacted yet
+    public ReactionType react(ReactionTarget target, Long targetId, Long userId, ReactionType reaction) {
+        if(reactionRepo.insertReaction(target.ordinal(), targetId, userId, reaction.ordinal()) == 1){
+            recordTotal(target, targetId, 1);
+            engagementCounterBuffer.record(reactionsCounter(target), targetId, reaction, 1);
+            return null;
+        }
+        ReactionType previous = reactionRepo.findForUpdate(target, targetId, userId).map(Reaction::getReaction).orElse(null);
+        if(previous == null){
+            // Removed in between, add it again
+            return react(target, targetId, userId, reaction);
+        }
+        if(previous != reaction){
+            // A change of type moves the reaction between two bars of the histogram, the total stays the same
+            reactionRepo.updateReaction(target, targetId, userId, reaction);
+            engagementCounterBuffer.record(reactionsCounter(target), targetId, previous, -1);
+            engagementCounterBuffer.record(reactionsCounter(target), targetId, reaction, 1);
+        }
+        return previous;
+    }
+
+    // Removes the reaction of the user, returns it, null when the user had not reacted
+    public ReactionType removeReaction(ReactionTarget target, Long targetId, Long userId) {
+        ReactionType previous = reactionRepo.findForUpdate(target, targetId, userId).map(Reaction::getReaction).orElse(null);
+        if(previous == null || reactionRepo.deleteReaction(target, targetId, userId) == 0){
+            return null;
+        }
+        recordTotal(target, targetId, -1);
+        engagementCounterBuffer.record(reactionsCounter(target), targetId, previous, -1);
+        return previous;
+    }
+
+    private void recordTotal(ReactionTarget target, Long targetId, long delta) {
+        switch(target){
+            case POST -> {
+                engagementCounterBuffer.record(EngagementCounter.POST_LIKES, targetId, delta);
+                eventPublisher.publishEvent(new PostEngagementEvent(targetId, delta));
+            }
+            case COMMENT -> engagementCounterBuffer.record(EngagementCounter.COMMENT_LIKES, targetId, delta);
+        }
+    }
+
+    private EngagementCounter reactionsCounter(ReactionTarget target) {
+        return switch(target){
+            case POST -> EngagementCounter.POST_REACTIONS;
+            case COMMENT -> EngagementCounter.COMMENT_REACTIONS;
+        };
+    }
+
+    // Exponential backoff with jitter, so the transactions that deadlocked don't collide again on the retry. Returns false when interrupted.
+    private boolean backOff(int attempt) {
+        long maxDelay = BASE_BACKOFF_MS << (attempt - 1);
+        try{
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxDelay / 2, maxDelay + 1));
+            return true;
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
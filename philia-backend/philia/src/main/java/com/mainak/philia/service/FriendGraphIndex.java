@@ -0,0 +1,364 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.user.AccountDeletionRequestedEvent;
+import com.mainak.philia.dto.user.FriendshipChangedEvent;
+import com.mainak.philia.dto.user.FriendshipDto;
+import com.mainak.philia.repository.FriendshipRepository;
+import com.mainak.philia.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+// The friend graph in memory as a sorted long[] of friend ids per user, so mutual friends are counted without loading User entities.
+// Next to it every user's best ranked friends of friends are kept with their mutual friends counts, updated for the two users of a
+// friendship and their friends when it changes, so reading suggestions doesn't walk the graph.
+// Loaded from friendships at startup, the two users of an accepted or removed friendship are re-read from the database once it commits.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FriendGraphIndex {
+    // Users per load batch, each batch reads the friendships of its users from both sides so it holds complete friend lists
+    private static final long LOAD_BATCH_SIZE = 1000;
+    private static final long[] NO_FRIENDS = new long[0];
+    // Candidates kept per user, twice the suggestions read since the user's friends and users with pending requests are skipped on read
+    static final int TOP_CANDIDATES = 100;
+
+    public record MutualFriendCount(long userId, int mutualFriendsCount) {}
+
+    private final UserRepository userRepo;
+    private final FriendshipRepository friendshipRepo;
+    private final Map<Long, long[]> adjacency = new ConcurrentHashMap<>();
+    private final Map<Long, Candidates> candidates = new ConcurrentHashMap<>();
+    // Until the graph is loaded friend lists are read from the database and suggestions counted on every read
+    private volatile boolean loaded;
+
+    // Changes wait for the load, they re-read the database so it doesn't matter whether the load saw them
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        adjacency.clear();
+        candidates.clear();
+        Long maxId = userRepo.findMaxId();
+        long friendships = 0;
+        if(maxId != null){
+            for(long fromId = 1; fromId <= maxId; fromId += LOAD_BATCH_SIZE){
+                long toId = fromId + LOAD_BATCH_SIZE - 1;
+                List<FriendshipDto> rows = new ArrayList<>(friendshipRepo.findFriendshipsByUserARange(fromId, toId));
+                rows.addAll(friendshipRepo.findFriendshipsByUserBRange(fromId, toId));
+                // Ordered by user and friend id, so each run is an already sorted friend list
+                rows.sort(Comparator.comparing(FriendshipDto::getUserId).thenComparing(FriendshipDto::getFriendId));
+                for(int start = 0, end; start < rows.size(); start = end){
+                    Long userId = rows.get(start).getUserId();
+                    end = start;
+                    while(end < rows.size() && rows.get(end).getUserId().equals(userId)){
+                        end++;
+                    }
+                    long[] friendIds = new long[end - start];
+                    for(int i = start; i < end; i++){
+                        friendIds[i - start] = rows.get(i).getFriendId();
+                    }
+                    adjacency.put(userId, friendIds);
+                }
+                friendships += rows.size();
+            }
+        }
+        for(Map.Entry<Long, long[]> user : adjacency.entrySet()){
+            storeCandidates(user.getKey(), countMutualFriends(user.getKey(), user.getValue(), friendId -> adjacency.getOrDefault(friendId, NO_FRIENDS)).top(TOP_CANDIDATES));
+        }
+        loaded = true;
+        log.info("Friend graph index loaded, users: {}, friendships: {}", adjacency.size(), friendships / 2);
+    }
+
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        refresh(event.getUserId());
+        refresh(event.getFriendId());
+    }
+
+    // The user is hidden at once, their friendships are deleted later by the account deletion job
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public synchronized void onAccountDeletionRequested(AccountDeletionRequestedEvent event) {
+        long userId = event.getUserId();
+        for(long friendId : adjacency.getOrDefault(userId, NO_FRIENDS)){
+            removeFriendship(userId, friendId);
+        }
+    }
+
+    // Sorted ids of the user's friends, the returned array must not be modified
+    public long[] getFriendIds(long userId) {
+        if(!loaded){
+            return toSortedArray(friendshipRepo.findActiveFriendIds(userId));
+        }
+        return adjacency.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    // Friends of friends ranked by the number of friends they have in common with the user, most first.
+    // Leaves out the user's friends and the sorted excludedIds, reads only as far into the ranking as the limit needs.
+    public List<MutualFriendCount> findMutualFriendCounts(long userId, long[] excludedIds, int limit) {
+        long[] friendIds = getFriendIds(userId);
+        if(!loaded){
+            return rank(countMutualFriends(userId, friendIds, this::getFriendIds), friendIds, excludedIds, limit);
+        }
+        List<MutualFriendCount> result = rank(candidates.getOrDefault(userId, Candidates.NONE), friendIds, excludedIds, limit);
+        // The kept candidates don't reach far enough down the ranking, dropped ones could come next
+        return result != null ? result : rank(recount(userId), friendIds, excludedIds, limit);
+    }
+
+    // Null when a candidate that isn't kept could rank before the end of the result
+    private static List<MutualFriendCount> rank(Candidates userCandidates, long[] friendIds, long[] excludedIds, int limit) {
+        int[] ranking = userCandidates.ranking();
+        List<MutualFriendCount> result = new ArrayList<>(Math.min(limit, ranking.length));
+        for(int i = 0; i < ranking.length && result.size() < limit; i++){
+            int count = userCandidates.counts[ranking[i]];
+            if(count <= userCandidates.bound){
+                return null;
+            }
+            long candidateId = userCandidates.userIds[ranking[i]];
+            if(Arrays.binarySearch(friendIds, candidateId) < 0 && Arrays.binarySearch(excludedIds, candidateId) < 0){
+                result.add(new MutualFriendCount(candidateId, count));
+            }
+        }
+        return result.size() < limit && userCandidates.bound > 0 ? null : result;
+    }
+
+    // Counts all of the user's candidates from the graph, keeps the best ranked ones and returns all of them
+    private synchronized Candidates recount(long userId) {
+        Candidates all = countMutualFriends(userId, adjacency.getOrDefault(userId, NO_FRIENDS), friendId -> adjacency.getOrDefault(friendId, NO_FRIENDS));
+        storeCandidates(userId, all.top(TOP_CANDIDATES));
+        return all;
+    }
+
+    // Applies the difference between the friends in the index and in the database
+    private synchronized void refresh(long userId) {
+        long[] indexed = adjacency.getOrDefault(userId, NO_FRIENDS);
+        long[] current = toSortedArray(friendshipRepo.findActiveFriendIds(userId));
+        for(long friendId : current){
+            if(Arrays.binarySearch(indexed, friendId) < 0){
+                addFriendship(userId, friendId);
+            }
+        }
+        for(long friendId : indexed){
+            if(Arrays.binarySearch(current, friendId) < 0){
+                removeFriendship(userId, friendId);
+            }
+        }
+    }
+
+    // Both users gain the other as a mutual friend with every friend of the other, and each friend of one gains the other as a candidate
+    private void addFriendship(long userId, long friendId) {
+        long[] userFriends = adjacency.getOrDefault(userId, NO_FRIENDS);
+        long[] friendFriends = adjacency.getOrDefault(friendId, NO_FRIENDS);
+        if(Arrays.binarySearch(userFriends, friendId) >= 0){
+            return;
+        }
+        updateScores(userId, userFriends, friendId, friendFriends, 1);
+        storeFriends(userId, insert(userFriends, friendId));
+        storeFriends(friendId, insert(friendFriends, userId));
+    }
+
+    private void removeFriendship(long userId, long friendId) {
+        long[] userFriends = adjacency.getOrDefault(userId, NO_FRIENDS);
+        if(Arrays.binarySearch(userFriends, friendId) < 0){
+            return;
+        }
+        long[] remainingUserFriends = remove(userFriends, friendId);
+        long[] remainingFriendFriends = remove(adjacency.getOrDefault(friendId, NO_FRIENDS), userId);
+        storeFriends(userId, remainingUserFriends);
+        storeFriends(friendId, remainingFriendFriends);
+        updateScores(userId, remainingUserFriends, friendId, remainingFriendFriends, -1);
+    }
+
+    // userFriends and friendFriends are the friend lists without the friendship that changed
+    private void updateScores(long userId, long[] userFriends, long friendId, long[] friendFriends, int delta) {
+        addToCandidates(userId, friendFriends, delta);
+        addToCandidates(friendId, userFriends, delta);
+        long[] user = {userId};
+        long[] friend = {friendId};
+        for(long friendOfFriend : friendFriends){
+            addToCandidates(friendOfFriend, user, delta);
+        }
+        for(long friendOfUser : userFriends){
+            addToCandidates(friendOfUser, friend, delta);
+        }
+    }
+
+    private void addToCandidates(long userId, long[] sortedCandidateIds, int delta) {
+        if(sortedCandidateIds.length > 0){
+            storeCandidates(userId, candidates.getOrDefault(userId, Candidates.NONE).add(sortedCandidateIds, delta));
+        }
+    }
+
+    private void storeFriends(long userId, long[] friendIds) {
+        if(friendIds.length == 0){
+            adjacency.remove(userId);
+        } else{
+            adjacency.put(userId, friendIds);
+        }
+    }
+
+    private void storeCandidates(long userId, Candidates userCandidates) {
+        if(userCandidates.userIds.length == 0 && userCandidates.bound == 0){
+            candidates.remove(userId);
+        } else{
+            candidates.put(userId, userCandidates);
+        }
+    }
+
+    // Every occurrence of a friend of a friend is one mutual friend, sorting groups them so they are counted in one pass
+    private static Candidates countMutualFriends(long userId, long[] friendIds, LongFunction<long[]> friendsOf) {
+        long[][] friendsOfFriends = new long[friendIds.length][];
+        int total = 0;
+        for(int i = 0; i < friendIds.length; i++){
+            friendsOfFriends[i] = friendsOf.apply(friendIds[i]);
+            total += friendsOfFriends[i].length;
+        }
+        long[] occurrences = new long[total];
+        int size = 0;
+        for(long[] friendsOfFriend : friendsOfFriends){
+            for(long candidateId : friendsOfFriend){
+                if(candidateId != userId){
+                    occurrences[size++] = candidateId;
+                }
+            }
+        }
+        Arrays.sort(occurrences, 0, size);
+
+        long[] userIds = new long[size];
+        int[] counts = new int[size];
+        int distinct = 0;
+        for(int start = 0, end; start < size; start = end){
+            end = start + 1;
+            while(end < size && occurrences[end] == occurrences[start]){
+                end++;
+            }
+            userIds[distinct] = occurrences[start];
+            counts[distinct++] = end - start;
+        }
+        return new Candidates(Arrays.copyOf(userIds, distinct), Arrays.copyOf(counts, distinct), 0);
+    }
+
+    private static long[] insert(long[] sortedIds, long id) {
+        int index = -Arrays.binarySearch(sortedIds, id) - 1;
+        long[] result = new long[sortedIds.length + 1];
+        System.arraycopy(sortedIds, 0, result, 0, index);
+        result[index] = id;
+        System.arraycopy(sortedIds, index, result, index + 1, sortedIds.length - index);
+        return result;
+    }
+
+    private static long[] remove(long[] sortedIds, long id) {
+        int index = Arrays.binarySearch(sortedIds, id);
+        if(index < 0){
+            return sortedIds;
+        }
+        long[] result = new long[sortedIds.length - 1];
+        System.arraycopy(sortedIds, 0, result, 0, index);
+        System.arraycopy(sortedIds, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static long[] toSortedArray(Collection<Long> ids) {
+        long[] array = ids.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    // The best ranked friends of friends of one user sorted by id with the number of friends in common, replaced as a whole on every change.
+    // Every candidate that isn't kept has at most bound friends in common, so kept candidates with more are ranked exactly.
+    // The ranking is computed on the first read after a change.
+    private static final class Candidates {
+        static final Candidates NONE = new Candidates(NO_FRIENDS, new int[0], 0);
+
+        final long[] userIds;
+        final int[] counts;
+        // 0 when every candidate is kept
+        final int bound;
+        private volatile int[] ranking;
+
+        Candidates(long[] userIds, int[] counts, int bound) {
+            this.userIds = userIds;
+            this.counts = counts;
+            this.bound = bound;
+        }
+
+        // Merges delta into the counts of the sorted ids and keeps the best ranked, candidates whose count drops to 0 are removed.
+        // An id that isn't kept while others were dropped had at most bound, it can't be added with an exact count but raises the bound.
+        Candidates add(long[] sortedIds, int delta) {
+            long[] mergedIds = new long[userIds.length + sortedIds.length];
+            int[] mergedCounts = new int[mergedIds.length];
+            int size = 0;
+            boolean raisedUnknown = false;
+            for(int i = 0, j = 0; i < userIds.length || j < sortedIds.length; ){
+                long userId;
+                int count;
+                if(j == sortedIds.length || (i < userIds.length && userIds[i] < sortedIds[j])){
+                    userId = userIds[i];
+                    count = counts[i++];
+                } else if(i == userIds.length || sortedIds[j] < userIds[i]){
+                    userId = sortedIds[j++];
+                    if(bound > 0){
+                        raisedUnknown |= delta > 0;
+                        continue;
+                    }
+                    count = delta;
+                } else{
+                    userId = userIds[i];
+                    count = counts[i++] + delta;
+                    j++;
+                }
+                if(count > 0){
+                    mergedIds[size] = userId;
+                    mergedCounts[size++] = count;
+                }
+            }
+            return new Candidates(Arrays.copyOf(mergedIds, size), Arrays.copyOf(mergedCounts, size), raisedUnknown ? bound + delta : bound).top(TOP_CANDIDATES);
+        }
+
+        // Keeps the k best ranked candidates, the best dropped one bounds the counts of all dropped ones
+        Candidates top(int k) {
+            if(userIds.length <= k){
+                return this;
+            }
+            int[] ranked = ranking();
+            int[] kept = Arrays.copyOf(ranked, k);
+            Arrays.sort(kept);
+            long[] keptIds = new long[k];
+            int[] keptCounts = new int[k];
+            for(int i = 0; i < k; i++){
+                keptIds[i] = userIds[kept[i]];
+                keptCounts[i] = counts[kept[i]];
+            }
+            return new Candidates(keptIds, keptCounts, Math.max(bound, counts[ranked[k]]));
+        }
+
+        // Positions ordered by count, most first, then by id, newest first.
+        // Count in the high bits and position in the low bits, so ranking is a sort of a long[].
+        int[] ranking() {
+            int[] result = ranking;
+            if(result == null){
+                long[] keys = new long[userIds.length];
+                for(int i = 0; i < keys.length; i++){
+                    keys[i] = ((long) counts[i] << 32) | i;
+                }
+                Arrays.sort(keys);
+                result = new int[keys.length];
+                for(int i = 0; i < keys.length; i++){
+                    result[i] = (int) keys[keys.length - 1 - i];
+                }
+                ranking = result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.user.UserProjection;
+import com.mainak.philia.repository.UserRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Suggests users to someone without friends of friends, e.g. a new sign-up.
+// Reads at most SAMPLE_FACTOR times the count from each source, whatever the size of the users table.
+@Service
+@AllArgsConstructor
+public class FriendSuggestionSampler {
+    private static final int SAMPLE_FACTOR = 2;
+
+    private final UserRepository userRepo;
+
+    public List<UserProjection> sample(Long userId, int count) {
+        int sampleSize = count * SAMPLE_FACTOR;
+        Map<Long, UserProjection> sampled = new LinkedHashMap<>();
+        // The newest users, who are the most likely to be looking for friends as well
+        userRepo.findRecentSuggestionCandidates(userId, PageRequest.of(0, sampleSize))
+                .forEach(user -> sampled.putIfAbsent(user.getId(), user));
+
+        // A window of the id index starting at a random id, wrapping around to the first ids when it runs out
+        Long maxId = userRepo.findMaxId();
+        if(maxId != null){
+            long fromId = ThreadLocalRandom.current().nextLong(1, maxId + 1);
+            List<UserProjection> window = new ArrayList<>(userRepo.findSuggestionCandidatesInRange(userId, fromId, maxId, PageRequest.of(0, sampleSize)));
+            if(window.size() < sampleSize && fromId > 1){
+                window.addAll(userRepo.findSuggestionCandidatesInRange(userId, 1L, fromId - 1, PageRequest.of(0, sampleSize - window.size())));
+            }
+            window.forEach(user -> sampled.putIfAbsent(user.getId(), user));
+        }
+
+        // Randomize the sample to provide varied suggestions
+        List<UserProjection> candidates = new ArrayList<>(sampled.values());
+        Collections.shuffle(candidates);
+        return candidates.subList(0, Math.min(count, candidates.size()));
+    }
+}
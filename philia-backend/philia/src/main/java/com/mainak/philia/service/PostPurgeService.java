@@ -0,0 +1,137 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.post.PostPurgeRequestedEvent;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.model.Post;
+import com.mainak.philia.repository.CommentRepository;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.ReactionCountRepository;
+import com.mainak.philia.repository.ReactionRepository;
+import com.mainak.philia.repository.TimelineEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+// Deletes posts with set-based statements instead of cascading through the Post.comments collection.
+// The reactions and reaction histograms of the post and its comments are deleted with it.
+@Slf4j
+@Service
+public class PostPurgeService {
+    // Posts with more reactions, comments and reactions on their comments than this are marked and deleted in the background
+    public static final long IN_REQUEST_LIMIT = 1000;
+    private static final int CHUNK_SIZE = 1000;
+
+    private final PostRepository postRepo;
+    private final CommentRepository commentRepo;
+    private final ReactionRepository reactionRepo;
+    private final ReactionCountRepository reactionCountRepo;
+    private final TimelineEntryRepository timelineRepo;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    public PostPurgeService(PostRepository postRepo, CommentRepository commentRepo, ReactionRepository reactionRepo, ReactionCountRepository reactionCountRepo,
+                            TimelineEntryRepository timelineRepo, ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
+        this.postRepo = postRepo;
+        this.commentRepo = commentRepo;
+        this.reactionRepo = reactionRepo;
+        this.reactionCountRepo = reactionCountRepo;
+        this.timelineRepo = timelineRepo;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Must run in the caller's transaction, either the post is gone or it is hidden and queued when it commits
+    public void deletePost(Post post) {
+        Long id = post.getId();
+        timelineRepo.deleteAllByPostId(id);
+        if(exceedsInRequestLimit(post)){
+            postRepo.markPendingDeletion(id);
+            eventPublisher.publishEvent(new PostPurgeRequestedEvent(id));
+            log.info("Post id: {} queued for background deletion", id);
+            return;
+        }
+
+        int deleted;
+        do{
+            deleted = deleteCommentChunk(id);
+        } while(deleted > 0);
+        deleteReactionsOfPost(id);
+        postRepo.deletePostRowById(id);
+    }
+
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPurgeRequested(PostPurgeRequestedEvent event) {
+        purgeInBackground(event.getPostId());
+    }
+
+    // Picks up purges interrupted by a restart
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingPurges() {
+        postRepo.findIdsPendingDeletion().forEach(this::purgeInBackground);
+    }
+
+    // Each chunk commits on its own, so locks are held for one chunk at a time and the purge can resume after a restart.
+    // Returns the number of rows deleted.
+    public int purgeInChunks(Long postId) {
+        int commentRows = 0;
+        int chunk;
+        while((chunk = transactionTemplate.execute(status -> deleteCommentChunk(postId))) > 0){
+            commentRows += chunk;
+        }
+        // Reactions of a very large post are removed in chunks, so no single statement locks all of them
+        int reactions = 0;
+        while((chunk = transactionTemplate.execute(status -> reactionRepo.deleteByTarget(ReactionTarget.POST.ordinal(), postId, CHUNK_SIZE))) > 0){
+            reactions += chunk;
+        }
+        int posts = transactionTemplate.execute(status -> deleteReactionsOfPost(postId) + postRepo.deletePostRowById(postId));
+        log.info("Post id: {} deleted in the background, comment rows: {}, reactions: {}", postId, commentRows, reactions);
+        return commentRows + reactions + posts;
+    }
+
+    private void purgeInBackground(Long postId) {
+        try{
+            purgeInChunks(postId);
+        } catch (Exception e){
+            log.error("Failed to delete post id: {}, errorMessage: {}", postId, e.getMessage());
+        }
+    }
+
+    // The comments' likes count too, a few comments can carry far more reactions than the post itself.
+    // The sum is only read when the post is below the limit, so it reads at most IN_REQUEST_LIMIT comments.
+    private boolean exceedsInRequestLimit(Post post) {
+        long rows = post.getLikesCount() + post.getCommentsCount();
+        return rows > IN_REQUEST_LIMIT || rows + commentRepo.sumLikesCountByPostId(post.getId()) > IN_REQUEST_LIMIT;
+    }
+
+    // Deletes at most CHUNK_SIZE reactions on a chunk of comments, or the chunk itself once its reactions are gone. Returns the number of rows deleted.
+    private int deleteCommentChunk(Long postId) {
+        List<Long> commentIds = commentRepo.findIdsByPostId(postId, PageRequest.of(0, CHUNK_SIZE));
+        if(commentIds.isEmpty()){
+            return 0;
+        }
+        int reactions = reactionRepo.deleteByTargets(ReactionTarget.COMMENT.ordinal(), commentIds, CHUNK_SIZE);
+        if(reactions > 0){
+            return reactions;
+        }
+        int reactionCounts = reactionCountRepo.deleteByTargetIds(ReactionTarget.COMMENT, commentIds);
+        commentRepo.deleteAllByIdInBatch(commentIds);
+        return reactionCounts + commentIds.size();
+    }
+
+    private int deleteReactionsOfPost(Long postId) {
+        List<Long> postIds = List.of(postId);
+        return reactionRepo.deleteByTargets(ReactionTarget.POST, postIds) + reactionCountRepo.deleteByTargetIds(ReactionTarget.POST, postIds);
+    }
+}
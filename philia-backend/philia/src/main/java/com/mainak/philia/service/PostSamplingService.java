@@ -0,0 +1,53 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.post.PostDto;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.utils.mapper.PostMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PostSamplingService {
+    // Ids of the most recent posts, random samples for anonymous visitors are drawn from this pool
+    private static final int SAMPLE_POOL_SIZE = 1000;
+
+    private final PostRepository postRepo;
+    private volatile List<Long> samplePool = List.of();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelay = 300_000, fixedDelay = 300_000)
+    public void refreshSamplePool() {
+        samplePool = List.copyOf(postRepo.findRecentPostIds(PageRequest.of(0, SAMPLE_POOL_SIZE)));
+        log.info("Post sample pool refreshed, size: {}", samplePool.size());
+    }
+
+    public List<PostDto> getRandomPosts(int count) {
+        List<Long> pool = samplePool;
+        if(pool.isEmpty()){
+            return List.of();
+        }
+
+        Set<Long> sampledIds = new LinkedHashSet<>();
+        if(pool.size() <= count){
+            sampledIds.addAll(pool);
+        } else{
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while(sampledIds.size() < count){
+                sampledIds.add(pool.get(random.nextInt(pool.size())));
+            }
+        }
+
+        // Posts deleted since the last refresh are simply missing from the result
+        return PostMapper.mapToPostDtosInOrder(sampledIds, postRepo.findProjectionsByIds(sampledIds));
+    }
+}
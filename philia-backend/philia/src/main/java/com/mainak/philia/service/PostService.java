@@ -1,121 +1,193 @@
 package com.mainak.philia.service;
 
+import com.mainak.philia.dto.app.CursorPageDto;
+import com.mainak.philia.dto.app.ImageMetadataDto;
+import com.mainak.philia.dto.app.ImageUploadedEvent;
 import com.mainak.philia.dto.notification.PhiliaEvent;
 import com.mainak.philia.dto.post.PostCreateDto;
+import com.mainak.philia.dto.post.PostCreatedEvent;
+import com.mainak.philia.dto.post.PostDeletedEvent;
+import com.mainak.philia.dto.post.PostProjection;
 import com.mainak.philia.dto.post.PostDto;
 import com.mainak.philia.dto.post.PostUpdateDto;
+import com.mainak.philia.dto.user.LikerProjection;
+import com.mainak.philia.dto.user.LikersPageDto;
 import com.mainak.philia.dto.user.UserDto;
+import com.mainak.philia.enums.EngagementCounter;
+import com.mainak.philia.enums.ImageSize;
 import com.mainak.philia.enums.PhiliaEventType;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
 import com.mainak.philia.exception.AppException;
 import com.mainak.philia.model.Post;
 import com.mainak.philia.model.User;
+import com.mainak.philia.repository.PostImageRepository;
 import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.ReactionRepository;
 import com.mainak.philia.repository.UserRepository;
+import com.mainak.philia.service.storage.BlobStore;
+import com.mainak.philia.service.storage.ImageService;
+import com.mainak.philia.utils.CursorUtils;
+import com.mainak.philia.utils.SecurityUtils;
 import com.mainak.philia.utils.mapper.PostMapper;
 import com.mainak.philia.utils.mapper.UserMapper;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.http.MediaType;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 @Slf4j
 @Service
 @AllArgsConstructor
 public class PostService {
+    // Friends shown above the likers list, as in "liked by A, B and C"
+    private static final int FRIEND_LIKERS_COUNT = 3;
+
     private final PostRepository repo;
+    private final ReactionRepository reactionRepo;
     private final UserRepository userRepo;
+    private final PostImageRepository postImageRepo;
+    private final TrendingService trendingService;
+    private final PostSamplingService postSamplingService;
+    private final EngagementCounterBuffer engagementCounterBuffer;
+    private final ReactionService reactionService;
+    private final PostPurgeService postPurgeService;
+    private final EngagementMutationService engagementMutationService;
     private final ApplicationEventPublisher eventPublisher;
+    private final BlobStore blobStore;
+    private final ImageService imageService;
 
     public ResponseEntity<List<PostDto>> getAllPosts() {
-        List<PostDto> posts = new ArrayList<>(repo.findAllByOrderByCreatedAtDesc().stream().map(PostMapper::mapToPostDto).toList());
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        // If the user is not authenticated, return random 10 posts
+        if(auth == null || auth instanceof AnonymousAuthenticationToken || !auth.isAuthenticated()){
+            List<PostDto> random10posts = postSamplingService.getRandomPosts(10);
+            if(random10posts.isEmpty()) {
+                throw new AppException("No posts found", HttpStatus.NOT_FOUND);
+            }
+            return ResponseEntity.ok(reactionService.withPostReactions(engagementCounterBuffer.withPendingPosts(random10posts)));
+        }
+
+        List<PostDto> posts = repo.findAllProjections().stream().map(PostMapper::mapToPostDto).toList();
         if(posts.isEmpty()) {
             throw new AppException("No posts found", HttpStatus.NOT_FOUND);
         }
-        // If the user is not authenticated, return random 10 posts
-        if(!SecurityContextHolder.getContext().getAuthentication().isAuthenticated()){
-            Collections.shuffle(posts);
-            List<PostDto> random10posts = posts.stream().limit(10).toList();
-            return ResponseEntity.ok(random10posts);
+        return ResponseEntity.ok(reactionService.withPostReactions(engagementCounterBuffer.withPendingPosts(posts)));
+    }
+
+    public ResponseEntity<CursorPageDto<PostDto>> getFeed(String cursor, Integer size) {
+        int pageSize = CursorUtils.resolvePageSize(size);
+        // Fetch one extra row to know whether there is a next page
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+
+        List<PostProjection> posts;
+        if(CursorUtils.isFirstPage(cursor)){
+            posts = repo.findFeedPage(pageable);
+        } else{
+            CursorUtils.TimeCursor timeCursor = CursorUtils.decodeTimeCursor(cursor);
+            posts = repo.findFeedPageBefore(timeCursor.createdAt(), timeCursor.id(), pageable);
+        }
+
+        boolean hasNext = posts.size() > pageSize;
+        List<PostProjection> page = hasNext ? posts.subList(0, pageSize) : posts;
+
+        String next = null;
+        if(hasNext){
+            PostProjection last = page.get(page.size() - 1);
+            next = CursorUtils.encodeTimeCursor(last.getCreatedAt(), last.getId());
         }
-        return ResponseEntity.ok(posts);
+
+        List<PostDto> postDtos = page.stream().map(PostMapper::mapToPostDto).toList();
+        return ResponseEntity.ok(new CursorPageDto<>(reactionService.withPostReactions(engagementCounterBuffer.withPendingPosts(postDtos)), next));
     }
 
     public ResponseEntity<PostDto> getPostById(Long id) {
-        Post post = repo.findById(id).orElseThrow(() -> new AppException("Post not found with id: " + id, HttpStatus.NOT_FOUND));
+        PostProjection post = repo.findProjectionById(id).orElseThrow(() -> new AppException("Post not found with id: " + id, HttpStatus.NOT_FOUND));
         PostDto postDto = PostMapper.mapToPostDto(post);
-        return ResponseEntity.ok(postDto);
+        return ResponseEntity.ok(reactionService.withReactions(engagementCounterBuffer.withPending(postDto)));
     }
 
     public ResponseEntity<List<PostDto>> getPostsByUserId(Long userId){
-        User user = userRepo.findById(userId).orElseThrow(() -> new AppException("User not found with id: " + userId, HttpStatus.NOT_FOUND));
-        List<Post> userPosts = repo.findAllByUserIdOrderByCreatedAtDesc(user.getId());
+        if(!userRepo.existsById(userId)){
+            throw new AppException("User not found with id: " + userId, HttpStatus.NOT_FOUND);
+        }
+        List<PostProjection> userPosts = repo.findProjectionsByUserId(userId);
 
         List<PostDto> posts = userPosts.stream().map(PostMapper::mapToPostDto).toList();
 
         log.info("Get posts by user id: {}", userId);
-        return ResponseEntity.ok(posts);
+        return ResponseEntity.ok(reactionService.withPostReactions(engagementCounterBuffer.withPendingPosts(posts)));
     }
 
-    public ResponseEntity<byte[]> getPostImageById(Long id) {
-        Post post = repo.findById(id).orElseThrow(() -> new AppException("Post not found with id: " + id, HttpStatus.NOT_FOUND));
-
-        if(post.getImage() == null){
-            return ResponseEntity.noContent().build();
-        }
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(post.getImageType()))
-                .body(post.getImage());
+    public ResponseEntity<Resource> getPostImageById(Long id, String version, Integer size, String ifNoneMatch) {
+        ImageMetadataDto metadata = repo.findImageMetadataById(id).orElseThrow(() -> new AppException("Post not found with id: " + id, HttpStatus.NOT_FOUND));
+        return imageService.serveImage(metadata, version, size, ifNoneMatch, () -> postImageRepo.findImageById(id));
     }
 
     public ResponseEntity<List<PostDto>> getTop10TrendingPosts(){
-        List<Post> posts = new ArrayList<>(repo.findAll());
-        LocalDateTime currTimeStamp = LocalDateTime.now();
-
-        posts.sort((post1, post2) -> {
-            long likesAndCommentsCntForPost1 = post1.getComments().size() + post1.getLikes().size();
-            long likesAndCommentsCntForPost2 = post2.getComments().size() + post2.getLikes().size();
-
-            long timeElapsedForPost1 = Duration.between(post1.getCreatedAt(), currTimeStamp).toMinutes();
-            long timeElapsedForPost2 = Duration.between(post2.getCreatedAt(), currTimeStamp).toMinutes();
+        return ResponseEntity.ok(trendingService.getTrendingPosts());
+    }
 
-            double scoreForPost1 = (likesAndCommentsCntForPost1) / Math.pow((timeElapsedForPost1 + 2), 1.5);
-            double scoreForPost2 = (likesAndCommentsCntForPost2) / Math.pow((timeElapsedForPost2 + 2), 1.5);
+    public ResponseEntity<List<UserDto>> getLikesByPostId(Long postId) {
+        if(!repo.existsById(postId)){
+            throw new AppException("Post not found with id: " + postId, HttpStatus.NOT_FOUND);
+        }
+        List<UserDto> likedUsers = reactionRepo.findLikers(ReactionTarget.POST, postId).stream().map(UserMapper::mapToUserDto).toList();
+        return ResponseEntity.ok(likedUsers);
+    }
 
-            // Sort in descending order of score
-            return Double.compare(scoreForPost2, scoreForPost1);
-        });
+    public ResponseEntity<LikersPageDto> getLikersPageByPostId(Long postId, String cursor, Integer size) {
+        // The denormalized counter is the total, so no COUNT(*) over the reactions
+        Long likesCount = repo.findLikesCountById(postId).orElseThrow(() -> new AppException("Post not found with id: " + postId, HttpStatus.NOT_FOUND));
+        int pageSize = CursorUtils.resolvePageSize(size);
+        // Fetch one extra row to know whether there is a next page
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+
+        List<LikerProjection> likers;
+        List<UserDto> friends = null;
+        if(CursorUtils.isFirstPage(cursor)){
+            likers = reactionRepo.findLikersPage(ReactionTarget.POST, postId, pageable);
+            Long viewerId = SecurityUtils.currentUserId();
+            if(viewerId != null){
+                friends = reactionRepo.findFriendLikers(ReactionTarget.POST, postId, viewerId, PageRequest.of(0, FRIEND_LIKERS_COUNT)).stream()
+                        .map(UserMapper::mapToUserDto)
+                        .toList();
+            }
+        } else{
+            CursorUtils.TimeCursor timeCursor = CursorUtils.decodeTimeCursor(cursor);
+            likers = reactionRepo.findLikersPageBefore(ReactionTarget.POST, postId, timeCursor.createdAt(), timeCursor.id(), pageable);
+        }
 
-        List<PostDto> top10TrendingPosts = posts.stream()
-                .limit(10)
-                .map(PostMapper::mapToPostDto)
-                .toList();
+        boolean hasNext = likers.size() > pageSize;
+        List<LikerProjection> page = hasNext ? likers.subList(0, pageSize) : likers;
 
-        return ResponseEntity.ok(top10TrendingPosts);
-    }
+        String next = null;
+        if(hasNext){
+            LikerProjection last = page.get(page.size() - 1);
+            next = CursorUtils.encodeTimeCursor(last.getLikedAt(), last.getUserId());
+        }
 
-    public ResponseEntity<List<UserDto>> getLikesByPostId(Long postId) {
-        Post post = repo.findById(postId).orElseThrow(() -> new AppException("Post not found with id: " + postId, HttpStatus.NOT_FOUND));
-        List<UserDto> likedUsers = post.getLikes().stream().map(UserMapper::mapToUserDto).toList();
-        return ResponseEntity.ok(likedUsers);
+        List<UserDto> items = page.stream().map(UserMapper::mapToUserDto).toList();
+        long totalCount = likesCount + engagementCounterBuffer.pending(EngagementCounter.POST_LIKES, postId);
+        return ResponseEntity.ok(new LikersPageDto(items, next, totalCount, friends));
     }
 
     public List<PostDto> searchPostsByKeyword(String keyword) {
-        List<Post> posts = repo.findByCaptionContainingIgnoreCaseOrderByCreatedAtDesc(keyword);
-        return posts.stream().map(PostMapper::mapToPostDto).toList();
+        List<PostProjection> posts = repo.searchProjectionsByKeyword(keyword);
+        return reactionService.withPostReactions(engagementCounterBuffer.withPendingPosts(posts.stream().map(PostMapper::mapToPostDto).toList()));
     }
 
     @PreAuthorize(
@@ -124,11 +196,16 @@ public class PostService {
     @Transactional
     public ResponseEntity<PostDto> createPost(PostCreateDto dto, MultipartFile postImage) {
         User user = userRepo.findById(dto.getUserId()).orElseThrow(() -> new AppException("User not found with id: " + dto.getUserId(), HttpStatus.NOT_FOUND));
-        Post post = PostMapper.mapToPostFromPostCreateDto(dto, user, postImage);
+        Post post = PostMapper.mapToPostFromPostCreateDto(dto, user);
+        if(postImage != null && !postImage.isEmpty()){
+            setPostImage(post, postImage);
+        }
         Post savedPost = repo.save(post);
 //        userRepo.save(user);
         PostDto postDto = PostMapper.mapToPostDto(savedPost);
 
+        eventPublisher.publishEvent(new PostCreatedEvent(savedPost.getId(), user.getId(), savedPost.getCreatedAt()));
+
         log.info("Create post with id: {} for user with id: {}", savedPost.getId(), dto.getUserId());
         return ResponseEntity.status(HttpStatus.CREATED).body(postDto);
     }
@@ -139,59 +216,67 @@ public class PostService {
     @Transactional
     public ResponseEntity<PostDto> updatePost(PostUpdateDto dto, MultipartFile postImage) {
         Post post = repo.findById(dto.getId()).orElseThrow(() -> new AppException("Post not found with id: " + dto.getId(), HttpStatus.NOT_FOUND));
-        Post updatedPost = PostMapper.updatePostFromPostUpdateDto(post, dto, postImage);
+        Post updatedPost = PostMapper.updatePostFromPostUpdateDto(post, dto);
+        // Not allowing user to update post image to null/empty (basically can't remove image from post)
+        if(postImage != null && !postImage.isEmpty()){
+            setPostImage(updatedPost, postImage);
+        }
 //        Post savedPost = repo.save(updatedPost);
-        PostDto postDto = PostMapper.mapToPostDto(updatedPost);
+        PostDto postDto = reactionService.withReactions(engagementCounterBuffer.withPending(PostMapper.mapToPostDto(updatedPost)));
 
         log.info("Post updated with id: {}", updatedPost.getId());
         return ResponseEntity.ok(postDto);
     }
 
+    // Adds or changes the reaction of the user, a like is the LIKE reaction.
+    // Not @Transactional, EngagementMutationService runs it in a transaction it can retry on deadlocks
     @PreAuthorize(
             "@ownerShipSecurity.isSameUser(#userId, authentication.name)"
     )
-    @Transactional
-    public boolean likePost(Long postId, Long userId) {
-        User user = userRepo.findById(userId).orElseThrow(() -> new AppException("User not found with id: " + userId, HttpStatus.NOT_FOUND));
-        Post post = repo.findById(postId).orElseThrow(() -> new AppException("Post not found with id: " + postId, HttpStatus.NOT_FOUND));
-
-        post.addLike(user);
-        user.getLikedPosts().add(post);
-
-        repo.save(post);
-
-        // If the post owner is not the same as the liker, send notification
-        if(!post.getUser().getId().equals(user.getId())){
-            PhiliaEvent postLikedEvent = PhiliaEvent
-                    .builder()
-                    .eventType(PhiliaEventType.POST_LIKE)
-                    .recipientId(post.getUser().getId())
-                    .notifierId(user.getId())
-                    .message(" has liked your post.")
-                    .link("/posts/" + post.getId())
-                    .build();
-            eventPublisher.publishEvent(postLikedEvent);
-        }
-
-        log.info("Post liked with id: {} by user with id: {}", postId, userId);
-        return true;
+    public boolean reactToPost(Long postId, Long userId, ReactionType reaction) {
+        return engagementMutationService.execute(() -> {
+            Long postOwnerId = repo.findOwnerIdById(postId).orElseThrow(() -> new AppException("Post not found with id: " + postId, HttpStatus.NOT_FOUND));
+
+            // The user was checked by @PreAuthorize, so neither side has to be loaded
+            ReactionType previous = engagementMutationService.react(ReactionTarget.POST, postId, userId, reaction);
+            if(previous != null){
+                // Already reacted, at most the type changed
+                return true;
+            }
+
+            // If the post owner is not the same as the user who reacted, send notification
+            if(!postOwnerId.equals(userId)){
+                PhiliaEvent postLikedEvent = PhiliaEvent
+                        .builder()
+                        .eventType(PhiliaEventType.POST_LIKE)
+                        .recipientId(postOwnerId)
+                        .notifierId(userId)
+                        .message(reaction == ReactionType.LIKE ? " has liked your post." : String.format(" reacted with %s to your post.", reaction.name().toLowerCase()))
+                        .link("/posts/" + postId)
+                        .build();
+                eventPublisher.publishEvent(postLikedEvent);
+            }
+
+            log.info("Post reacted to with id: {} by user with id: {}, reaction: {}", postId, userId, reaction);
+            return true;
+        });
     }
 
     @PreAuthorize(
             "@ownerShipSecurity.isSameUser(#userId, authentication.name)"
     )
-    @Transactional
-    public boolean removeLikeFromPost(Long postId, Long userId) {
-        User user = userRepo.findById(userId).orElseThrow(() -> new AppException("User not found with id: " + userId, HttpStatus.NOT_FOUND));
-        Post post = repo.findById(postId).orElseThrow(() -> new AppException("Post not found with id: " + postId, HttpStatus.NOT_FOUND));
-
-        post.removeLike(user);
-        user.getLikedPosts().remove(post);
-
-        repo.save(post);
-
-        log.info("Post like removed with id: {} by user with id: {}", postId, userId);
-        return true;
+    public boolean removeReactionFromPost(Long postId, Long userId) {
+        return engagementMutationService.execute(() -> {
+            if(!repo.existsById(postId)){
+                throw new AppException("Post not found with id: " + postId, HttpStatus.NOT_FOUND);
+            }
+            if(engagementMutationService.removeReaction(ReactionTarget.POST, postId, userId) == null){
+                throw new AppException("The user has not reacted to this post", HttpStatus.BAD_REQUEST);
+            }
+
+            log.info("Post reaction removed with id: {} by user with id: {}", postId, userId);
+            return true;
+        });
     }
 
     @PreAuthorize(
@@ -199,10 +284,24 @@ public class PostService {
     )
     @Transactional
     public ResponseEntity<Void> deletePostById(Long id) {
-        Post post = repo.findById(id).orElseThrow(() -> new AppException("Post not found with id: " + id, HttpStatus.NOT_FOUND));
-        repo.delete(post);
+        Post post = repo.findById(id)
+                .filter(found -> !found.isPendingDeletion())
+                .orElseThrow(() -> new AppException("Post not found with id: " + id, HttpStatus.NOT_FOUND));
+        postPurgeService.deletePost(post);
+
+        eventPublisher.publishEvent(new PostDeletedEvent(id));
 
         log.info("Post deleted with id: {}", id);
         return ResponseEntity.noContent().build();
     }
+
+    private void setPostImage(Post post, MultipartFile postImage) {
+        post.setImageKey(blobStore.put(postImage));
+        post.setImageType(postImage.getContentType());
+        if(post.isHasLegacyImage()){
+            postImageRepo.clearImage(post.getId());
+            post.setHasLegacyImage(false);
+        }
+        eventPublisher.publishEvent(new ImageUploadedEvent(post.getImageKey(), post.getImageType(), ImageSize.POST_IMAGE_SIZES));
+    }
 }
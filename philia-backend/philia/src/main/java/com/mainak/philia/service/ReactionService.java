@@ -0,0 +1,69 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.comment.CommentDto;
+import com.mainak.philia.dto.post.PostDto;
+import com.mainak.philia.enums.EngagementCounter;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
+import com.mainak.philia.repository.ReactionCountRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reaction histograms of the posts/comments of a page, read with one query on reaction_counts plus the pending deltas
+@Service
+@AllArgsConstructor
+public class ReactionService {
+    private final ReactionCountRepository reactionCountRepo;
+    private final EngagementCounterBuffer engagementCounterBuffer;
+
+    // Like EngagementCounterBuffer.withPendingPosts, must not be used on cached DTOs
+    public <T extends PostDto> List<T> withPostReactions(List<T> posts) {
+        Map<Long, Map<ReactionType, Long>> histograms = findHistograms(ReactionTarget.POST, posts.stream().map(PostDto::getId).toList());
+        posts.forEach(post -> post.setReactionCounts(histograms.get(post.getId())));
+        return posts;
+    }
+
+    public PostDto withReactions(PostDto post) {
+        withPostReactions(List.of(post));
+        return post;
+    }
+
+    public <T extends CommentDto> List<T> withCommentReactions(List<T> comments) {
+        Map<Long, Map<ReactionType, Long>> histograms = findHistograms(ReactionTarget.COMMENT, comments.stream().map(CommentDto::getId).toList());
+        comments.forEach(comment -> comment.setReactionCounts(histograms.get(comment.getId())));
+        return comments;
+    }
+
+    public CommentDto withReactions(CommentDto comment) {
+        withCommentReactions(List.of(comment));
+        return comment;
+    }
+
+    private Map<Long, Map<ReactionType, Long>> findHistograms(ReactionTarget target, List<Long> targetIds) {
+        Map<Long, Map<ReactionType, Long>> histograms = new HashMap<>();
+        if(targetIds.isEmpty()){
+            return histograms;
+        }
+        targetIds.forEach(targetId -> histograms.put(targetId, new EnumMap<>(ReactionType.class)));
+        reactionCountRepo.findByTargetIds(target, targetIds)
+                .forEach(count -> histograms.get(count.getTargetId()).put(count.getReaction(), count.getReactionsCount()));
+
+        EngagementCounter counter = target == ReactionTarget.POST ? EngagementCounter.POST_REACTIONS : EngagementCounter.COMMENT_REACTIONS;
+        histograms.forEach((targetId, histogram) -> {
+            for(ReactionType reaction : ReactionType.values()){
+                long count = histogram.getOrDefault(reaction, 0L) + engagementCounterBuffer.pending(counter, targetId, reaction);
+                if(count > 0){
+                    histogram.put(reaction, count);
+                } else{
+                    histogram.remove(reaction);
+                }
+            }
+        });
+        return histograms;
+    }
+}
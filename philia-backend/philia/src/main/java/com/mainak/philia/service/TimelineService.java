@@ -0,0 +1,152 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.app.CursorPageDto;
+import com.mainak.philia.dto.post.PostCreatedEvent;
+import com.mainak.philia.dto.post.PostDto;
+import com.mainak.philia.dto.post.PostProjection;
+import com.mainak.philia.dto.user.FriendshipChangedEvent;
+import com.mainak.philia.enums.FriendshipState;
+import com.mainak.philia.model.TimelineEntry;
+import com.mainak.philia.repository.FriendshipRepository;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.TimelineEntryRepository;
+import com.mainak.philia.repository.UserRepository;
+import com.mainak.philia.utils.CursorUtils;
+import com.mainak.philia.utils.mapper.PostMapper;
+import jakarta.transaction.Transactional;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@AllArgsConstructor
+public class TimelineService {
+    // Authors with more friends than this are not fanned out on write, their posts are merged in on read
+    public static final long FAN_OUT_THRESHOLD = 1000;
+    // Recent posts written into a timeline when it gains their author, older ones are reached through the author's profile
+    private static final int BACKFILL_POSTS = 20;
+
+    private final TimelineEntryRepository repo;
+    private final PostRepository postRepo;
+    private final UserRepository userRepo;
+    private final FriendshipRepository friendshipRepo;
+    private final EngagementCounterBuffer engagementCounterBuffer;
+    private final ReactionService reactionService;
+
+    @PreAuthorize(
+            "@ownerShipSecurity.isSameUser(#userId, authentication.name)"
+    )
+    public ResponseEntity<CursorPageDto<PostDto>> getTimeline(Long userId, String cursor, Integer size) {
+        int pageSize = CursorUtils.resolvePageSize(size);
+        // Fetch one extra row to know whether there is a next page
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+        CursorUtils.TimeCursor timeCursor = CursorUtils.isFirstPage(cursor) ? null : CursorUtils.decodeTimeCursor(cursor);
+
+        List<TimelineEntry> entries = timeCursor == null
+                ? repo.findTimelinePage(userId, pageable)
+                : repo.findTimelinePageBefore(userId, timeCursor.createdAt(), timeCursor.id(), pageable);
+
+        // Fan-out-on-read for friends whose posts were not written to the timeline
+        List<Long> highFanOutFriendIds = friendshipRepo.findFriendIdsWithMoreFriendsThan(userId, FAN_OUT_THRESHOLD);
+        List<PostProjection> pulledPosts = List.of();
+        if(!highFanOutFriendIds.isEmpty()){
+            pulledPosts = timeCursor == null
+                    ? postRepo.findPageByUserIds(highFanOutFriendIds, pageable)
+                    : postRepo.findPageByUserIdsBefore(highFanOutFriendIds, timeCursor.createdAt(), timeCursor.id(), pageable);
+        }
+
+        // Merge both sources on (createdAt, postId) descending, the same key the cursor uses
+        Map<Long, LocalDateTime> postTimes = new HashMap<>();
+        entries.forEach(entry -> postTimes.put(entry.getPostId(), entry.getCreatedAt()));
+        pulledPosts.forEach(post -> postTimes.put(post.getId(), post.getCreatedAt()));
+
+        List<Long> postIds = postTimes.keySet().stream()
+                .sorted(Comparator.comparing((Long postId) -> postTimes.get(postId)).thenComparing(Function.identity()).reversed())
+                .limit(pageSize + 1)
+                .toList();
+
+        boolean hasNext = postIds.size() > pageSize;
+        List<Long> pageIds = hasNext ? postIds.subList(0, pageSize) : postIds;
+
+        String next = null;
+        if(hasNext){
+            Long lastId = pageIds.get(pageIds.size() - 1);
+            next = CursorUtils.encodeTimeCursor(postTimes.get(lastId), lastId);
+        }
+
+        List<PostProjection> projections = new ArrayList<>(pulledPosts);
+        Set<Long> pulledIds = pulledPosts.stream().map(PostProjection::getId).collect(Collectors.toSet());
+        List<Long> missingIds = pageIds.stream().filter(postId -> !pulledIds.contains(postId)).toList();
+        if(!missingIds.isEmpty()){
+            projections.addAll(postRepo.findProjectionsByIds(missingIds));
+        }
+
+        List<PostDto> posts = reactionService.withPostReactions(engagementCounterBuffer.withPendingPosts(PostMapper.mapToPostDtosInOrder(pageIds, projections)));
+
+        return ResponseEntity.ok(new CursorPageDto<>(posts, next));
+    }
+
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void fanOutPost(PostCreatedEvent event){
+        // The author always sees their own post
+        repo.insertEntry(event.getAuthorId(), event.getPostId(), event.getAuthorId(), event.getCreatedAt());
+
+        long friendsCount = userRepo.findFriendsCountById(event.getAuthorId()).orElse(0L);
+        if(friendsCount > FAN_OUT_THRESHOLD){
+            log.info("Skipping timeline fan-out for post id: {}, author has {} friends", event.getPostId(), friendsCount);
+            return;
+        }
+
+        int written = repo.fanOutToFriends(event.getPostId(), event.getAuthorId(), event.getCreatedAt(), FriendshipState.FRIENDS.ordinal());
+        log.info("Post id: {} fanned out to {} timelines", event.getPostId(), written);
+    }
+
+    // Fan-out only reaches the friends an author has when posting. A new friend gets the other's recent posts, and an author who
+    // drops to FAN_OUT_THRESHOLD friends is no longer merged in on read, so their recent posts are fanned out that were skipped.
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void backfillTimelines(FriendshipChangedEvent event){
+        Long userId = event.getUserId();
+        Long friendId = event.getFriendId();
+        boolean friends = friendshipRepo.findState(Math.min(userId, friendId), Math.max(userId, friendId))
+                .filter(state -> state == FriendshipState.FRIENDS)
+                .isPresent();
+        for(Long authorId : List.of(userId, friendId)){
+            long friendsCount = userRepo.findFriendsCountById(authorId).orElse(0L);
+            if(friends && friendsCount <= FAN_OUT_THRESHOLD){
+                Long ownerId = authorId.equals(userId) ? friendId : userId;
+                int written = 0;
+                for(PostProjection post : recentPosts(authorId)){
+                    written += repo.insertEntry(ownerId, post.getId(), authorId, post.getCreatedAt());
+                }
+                log.info("Backfilled {} posts of user id: {} into the timeline of user id: {}", written, authorId, ownerId);
+            } else if(!friends && friendsCount == FAN_OUT_THRESHOLD){
+                int written = 0;
+                for(PostProjection post : recentPosts(authorId)){
+                    written += repo.fanOutToFriends(post.getId(), authorId, post.getCreatedAt(), FriendshipState.FRIENDS.ordinal());
+                }
+                log.info("User id: {} dropped to the fan-out threshold, backfilled {} timeline entries", authorId, written);
+            }
+        }
+    }
+
+    private List<PostProjection> recentPosts(Long authorId) {
+        return postRepo.findPageByUserIds(List.of(authorId), PageRequest.of(0, BACKFILL_POSTS));
+    }
+}
@@ -0,0 +1,123 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.post.*;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.utils.mapper.PostMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TrendingService {
+    public static final int TRENDING_POSTS_COUNT = 10;
+    // Only the most recent posts are tracked, older ones cannot compete with the time decay of the score
+    private static final int MAX_CANDIDATES = 5000;
+
+    private final PostRepository postRepo;
+
+    private final Map<Long, Candidate> candidates = new ConcurrentHashMap<>();
+    private volatile List<PostDto> trendingPosts = List.of();
+
+    private record Candidate(LocalDateTime createdAt, AtomicLong engagementCount) {}
+
+    public List<PostDto> getTrendingPosts() {
+        return trendingPosts;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        reloadCandidates();
+        refreshTrendingPosts();
+    }
+
+    // Full reload from the database, corrects any drift from missed events (e.g. account deletions)
+    @Scheduled(initialDelay = 3_600_000, fixedDelay = 3_600_000)
+    public void reloadCandidates() {
+        List<PostEngagementDto> engagements = postRepo.findRecentPostEngagements(PageRequest.of(0, MAX_CANDIDATES));
+
+        Map<Long, Candidate> loaded = new HashMap<>();
+        for(PostEngagementDto engagement : engagements){
+            loaded.put(engagement.getPostId(), new Candidate(engagement.getCreatedAt(), new AtomicLong(engagement.getEngagementCount())));
+        }
+        candidates.keySet().retainAll(loaded.keySet());
+        candidates.putAll(loaded);
+
+        log.info("Trending candidates reloaded, count: {}", candidates.size());
+    }
+
+    @Scheduled(initialDelay = 60_000, fixedDelay = 60_000)
+    public void refreshTrendingPosts() {
+        evictOldestCandidates();
+
+        LocalDateTime currTimeStamp = LocalDateTime.now();
+        // Min-heap holding the best K scores seen so far
+        PriorityQueue<Map.Entry<Long, Double>> topPosts = new PriorityQueue<>(Map.Entry.comparingByValue());
+
+        candidates.forEach((postId, candidate) -> {
+            long timeElapsed = Duration.between(candidate.createdAt(), currTimeStamp).toMinutes();
+            double score = candidate.engagementCount().get() / Math.pow((timeElapsed + 2), 1.5);
+
+            if(topPosts.size() < TRENDING_POSTS_COUNT){
+                topPosts.offer(Map.entry(postId, score));
+            } else if(score > topPosts.peek().getValue()){
+                topPosts.poll();
+                topPosts.offer(Map.entry(postId, score));
+            }
+        });
+
+        List<Long> topPostIds = new ArrayList<>();
+        while(!topPosts.isEmpty()){
+            topPostIds.add(topPosts.poll().getKey());
+        }
+        // Heap pops in ascending order of score
+        Collections.reverse(topPostIds);
+
+        trendingPosts = PostMapper.mapToPostDtosInOrder(topPostIds, postRepo.findProjectionsByIds(topPostIds));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPostCreated(PostCreatedEvent event) {
+        candidates.put(event.getPostId(), new Candidate(event.getCreatedAt(), new AtomicLong()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPostEngagement(PostEngagementEvent event) {
+        Candidate candidate = candidates.get(event.getPostId());
+        if(candidate != null){
+            candidate.engagementCount().addAndGet(event.getDelta());
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPostDeleted(PostDeletedEvent event) {
+        candidates.remove(event.getPostId());
+        trendingPosts = trendingPosts.stream().filter(post -> !post.getId().equals(event.getPostId())).toList();
+    }
+
+    private void evictOldestCandidates() {
+        int excess = candidates.size() - MAX_CANDIDATES;
+        if(excess <= 0){
+            return;
+        }
+        candidates.entrySet().stream()
+                .sorted(Comparator.comparing(entry -> entry.getValue().createdAt()))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(candidates::remove);
+    }
+}
@@ -1,23 +1,38 @@
 package com.mainak.philia.service;
 
+import com.mainak.philia.dto.app.CursorPageDto;
+import com.mainak.philia.dto.app.ImageMetadataDto;
+import com.mainak.philia.dto.app.ImageUploadedEvent;
 import com.mainak.philia.dto.auth.LoginResponseDto;
 import com.mainak.philia.dto.notification.PhiliaEvent;
+import com.mainak.philia.dto.reaction.UserReactionDto;
 import com.mainak.philia.dto.user.*;
+import com.mainak.philia.enums.FriendshipState;
+import com.mainak.philia.enums.ImageSize;
 import com.mainak.philia.enums.PhiliaEventType;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
 import com.mainak.philia.exception.AppException;
-import com.mainak.philia.model.FriendRequestMetaData;
 import com.mainak.philia.model.User;
-import com.mainak.philia.repository.FriendRequestMetaDataRepository;
+import com.mainak.philia.repository.FriendshipRepository;
+import com.mainak.philia.repository.ReactionRepository;
+import com.mainak.philia.repository.TimelineEntryRepository;
+import com.mainak.philia.repository.UserAvatarRepository;
 import com.mainak.philia.repository.UserRepository;
 import com.mainak.philia.security.JwtUtils;
 import com.mainak.philia.service.auth.AppUserDetails;
+import com.mainak.philia.service.storage.BlobStore;
+import com.mainak.philia.service.storage.ImageService;
+import com.mainak.philia.utils.CursorUtils;
 import com.mainak.philia.utils.mapper.UserMapper;
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -32,22 +47,34 @@ import org.springframework.web.multipart.MultipartFile;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @AllArgsConstructor
 public class UserService {
+    private static final int MAX_LIKED_IDS_LOOKUP = 200;
+    private static final int MAX_FRIEND_SUGGESTIONS = 50;
+    private static final int SAMPLED_FRIEND_SUGGESTIONS = 10;
+
     private final UserRepository repo;
     private final OtpService otpService;
     private final ApplicationEventPublisher eventPublisher;
-    private final NotificationService notificationService;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtils jwtUtils;
     private final AuthenticationManager authenticationManager;
-    private final FriendRequestMetaDataRepository friendRequestMetaDataRepo;
+    private final FriendshipRepository friendshipRepo;
+    private final TimelineEntryRepository timelineRepo;
+    private final UserAvatarRepository userAvatarRepo;
+    private final ReactionRepository reactionRepo;
+    private final BlobStore blobStore;
+    private final ImageService imageService;
+    private final AccountDeletionService accountDeletionService;
+    private final FriendGraphIndex friendGraphIndex;
+    private final FriendSuggestionSampler friendSuggestionSampler;
 
     public ResponseEntity<List<UserDto>> getAllUsers() {
-        List<UserDto> users = repo.findAll().stream().map(UserMapper::mapToUserDto).toList();
+        List<UserDto> users = repo.findAllActive().stream().map(UserMapper::mapToUserDto).toList();
         if(users.isEmpty()){
             throw new AppException("No users found", HttpStatus.NOT_FOUND);
         }
@@ -55,97 +82,104 @@ public class UserService {
     }
 
     public ResponseEntity<UserResponseDto> getUserById(Long id) {
-        User user = repo.findById(id).orElseThrow(() -> new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND));
-        UserResponseDto userResponseDto = UserMapper.mapToUserResponseDto(user);
-
-        List<FriendRequestDto> sentFriendRequests = getSentFriendRequestDtoFromUser(user);
-        List<FriendRequestDto> receivedFriendRequests = getReceivedFriendRequestDtoFromUser(user);
-
-        userResponseDto.setSentFriendRequests(sentFriendRequests);
-        userResponseDto.setReceivedFriendRequests(receivedFriendRequests);
+        User user = repo.findActiveById(id).orElseThrow(() -> new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND));
+        UserResponseDto userResponseDto = mapToUserResponseDto(user);
 
         log.info("Executing get user by id for user: {}", id);
         return ResponseEntity.status(HttpStatus.OK).body(userResponseDto);
     }
 
-    public ResponseEntity<byte[]> getUserProfileImageById(Long id) {
-        User user = repo.findById(id).orElseThrow(() -> new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND));
-
-        if(user.getProfileImage() == null){
-            return ResponseEntity.noContent().build();
-        }
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(user.getProfileImageType()))
-                .body(user.getProfileImage());
+    public ResponseEntity<Resource> getUserProfileImageById(Long id, String version, Integer size, String ifNoneMatch) {
+        ImageMetadataDto metadata = repo.findProfileImageMetadataById(id).orElseThrow(() -> new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND));
+        return imageService.serveImage(metadata, version, size, ifNoneMatch, () -> userAvatarRepo.findImageById(id));
     }
 
     public ResponseEntity<UserResponseDto> getLoggedInUser() {
         AppUserDetails details =  (AppUserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         String email = details.getUsername();
         User user = repo.findByEmail(email).orElseThrow(() -> new AppException("Invalid user email: " + email, HttpStatus.NOT_FOUND));
-        UserResponseDto userResponseDto = UserMapper.mapToUserResponseDto(user);
-        List<FriendRequestDto> sentFriendRequests = getSentFriendRequestDtoFromUser(user);
-        List<FriendRequestDto> receivedFriendRequests = getReceivedFriendRequestDtoFromUser(user);
-
-        userResponseDto.setSentFriendRequests(sentFriendRequests);
-        userResponseDto.setReceivedFriendRequests(receivedFriendRequests);
+        UserResponseDto userResponseDto = mapToUserResponseDto(user);
+        setAllLikedIds(userResponseDto);
 
         return ResponseEntity.ok(userResponseDto);
     }
 
     public ResponseEntity<List<UserDto>> getFriendsByUserId(Long id) {
-        User user = repo.findById(id).orElseThrow(() -> new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND));
-        List<UserDto> friends = user.getFriends().stream().map(UserMapper::mapToUserDto).toList();
+        if(!repo.existsActiveById(id)){
+            throw new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND);
+        }
+        List<UserDto> friends = friendshipRepo.findFriends(id).stream().map(UserMapper::mapToUserDto).toList();
         return ResponseEntity.ok(friends);
     }
 
-    @PreAuthorize(
-            "@ownerShipSecurity.isSameUser(#id, authentication.name)"
-    )
-    public ResponseEntity<List<FriendSuggestionDto>> getFriendSuggestions(Long id)
-    {
-        User user = repo.findById(id).orElseThrow(() -> new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND));
+    public ResponseEntity<CursorPageDto<UserDto>> getFriendPageByUserId(Long id, String cursor, Integer size) {
+        if(!repo.existsActiveById(id)){
+            throw new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND);
+        }
+        int pageSize = CursorUtils.resolvePageSize(size);
+        // Fetch one extra row to know whether there is a next page
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
 
-        Set<User> friends = user.getFriends();
-        Set<User> sentFriendRequests = user.getSentFriendRequests();
-        Set<User> receivedFriendRequests = user.getReceivedFriendRequests();
+        List<UserProjection> friends = CursorUtils.isFirstPage(cursor)
+                ? friendshipRepo.findFriendPage(id, pageable)
+                : friendshipRepo.findFriendPageAfter(id, CursorUtils.decodeIdCursor(cursor), pageable);
 
-        Map<UserDto, Integer> mutualConnectionsCntMap = new HashMap<>();
+        boolean hasNext = friends.size() > pageSize;
+        List<UserProjection> page = hasNext ? friends.subList(0, pageSize) : friends;
+        String next = hasNext ? CursorUtils.encodeIdCursor(page.get(page.size() - 1).getId()) : null;
 
-        for(User friend: friends){
-            for(User friendsFriend: friend.getFriends()){
-                if(!friendsFriend.getId().equals(user.getId()) && !friends.contains(friendsFriend) && !sentFriendRequests.contains(friendsFriend) && !receivedFriendRequests.contains(friendsFriend)){
+        return ResponseEntity.ok(new CursorPageDto<>(page.stream().map(UserMapper::mapToUserDto).toList(), next));
+    }
 
-                    UserDto suggestedFriend = UserMapper.mapToUserDto(friendsFriend);
-                    int cnt = mutualConnectionsCntMap.getOrDefault(suggestedFriend, 0);
-                    mutualConnectionsCntMap.put(suggestedFriend, cnt + 1);
-                }
-            }
+    // Resolves which of the posts and comments on the current page the user reacted to and how, one IN query on the reactions for each
+    @PreAuthorize(
+            "@ownerShipSecurity.isSameUser(#id, authentication.name)"
+    )
+    public ResponseEntity<LikedIdsDto> getLikedIds(Long id, List<Long> postIds, List<Long> commentIds) {
+        postIds = postIds == null ? List.of() : postIds;
+        commentIds = commentIds == null ? List.of() : commentIds;
+        if(postIds.size() + commentIds.size() > MAX_LIKED_IDS_LOOKUP){
+            throw new AppException("At most " + MAX_LIKED_IDS_LOOKUP + " ids can be looked up at once", HttpStatus.BAD_REQUEST);
         }
 
-        List<FriendSuggestionDto> friendSuggestions = new ArrayList<>();
+        Map<Long, ReactionType> postReactions = findUserReactions(id, ReactionTarget.POST, postIds);
+        Map<Long, ReactionType> commentReactions = findUserReactions(id, ReactionTarget.COMMENT, commentIds);
+        return ResponseEntity.ok(new LikedIdsDto(postReactions.keySet(), commentReactions.keySet(), postReactions, commentReactions));
+    }
 
-        for(UserDto suggestedFriend: mutualConnectionsCntMap.keySet()){
-            friendSuggestions.add(new FriendSuggestionDto(suggestedFriend, mutualConnectionsCntMap.get(suggestedFriend)));
+    @PreAuthorize(
+            "@ownerShipSecurity.isSameUser(#id, authentication.name)"
+    )
+    public ResponseEntity<List<FriendSuggestionDto>> getFriendSuggestions(Long id)
+    {
+        if(!repo.existsActiveById(id)){
+            throw new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND);
         }
+        // Users with a pending request in either direction are not suggested
+        long[] requestUserIds = friendshipRepo.findRequestUserIds(id).stream().mapToLong(Long::longValue).sorted().toArray();
+
+        // Mutual friends counts are kept up to date by the in-memory friend graph, only the suggested users are read from the database
+        List<FriendGraphIndex.MutualFriendCount> mutualFriendCounts = friendGraphIndex.findMutualFriendCounts(id, requestUserIds, MAX_FRIEND_SUGGESTIONS);
 
         // If no suggestions based on mutual connections, suggest other users
-        if(friendSuggestions.isEmpty()){
-            List<User> allUsers = repo.findAll();
-            // Randomize the list to provide varied suggestions
-            Collections.shuffle(allUsers);
-            for(User potentialFriend: allUsers) {
-                if (!potentialFriend.getId().equals(user.getId()) && !friends.contains(potentialFriend) && !sentFriendRequests.contains(potentialFriend) && !receivedFriendRequests.contains(potentialFriend)) {
-                    UserDto suggestedFriendDto = UserMapper.mapToUserDto(potentialFriend);
-                    friendSuggestions.add(new FriendSuggestionDto(suggestedFriendDto, 0));
-                }
-            }
-            return ResponseEntity.ok(friendSuggestions.stream().limit(10).toList());
+        if(mutualFriendCounts.isEmpty()){
+            List<FriendSuggestionDto> friendSuggestions = friendSuggestionSampler.sample(id, SAMPLED_FRIEND_SUGGESTIONS).stream()
+                    .map(potentialFriend -> new FriendSuggestionDto(UserMapper.mapToUserDto(potentialFriend), 0))
+                    .toList();
+            return ResponseEntity.ok(friendSuggestions);
         }
 
-        // Sort the suggestions in descending order based on mutual connections count
-        friendSuggestions.sort((suggestion1, suggestion2) -> Integer.compare(suggestion2.getMutualConnectionsCount(), suggestion1.getMutualConnectionsCount()));
+        Map<Long, UserProjection> suggestedUsers = repo.findProjectionsByIds(mutualFriendCounts.stream().map(FriendGraphIndex.MutualFriendCount::userId).toList()).stream()
+                .collect(Collectors.toMap(UserProjection::getId, user -> user));
+
+        // Already sorted in descending order of mutual connections, users hidden since are skipped
+        List<FriendSuggestionDto> friendSuggestions = new ArrayList<>();
+        for(FriendGraphIndex.MutualFriendCount mutualFriendCount : mutualFriendCounts){
+            UserProjection suggestedFriend = suggestedUsers.get(mutualFriendCount.userId());
+            if(suggestedFriend != null){
+                friendSuggestions.add(new FriendSuggestionDto(UserMapper.mapToUserDto(suggestedFriend), mutualFriendCount.mutualFriendsCount()));
+            }
+        }
 
         return ResponseEntity.ok(friendSuggestions);
     }
@@ -178,13 +212,8 @@ public class UserService {
 
         User user = repo.findByEmail(loginDto.getEmail())
                 .orElseThrow(() -> new AppException("User not found with email: " + loginDto.getEmail(), HttpStatus.NOT_FOUND));
-        UserResponseDto userResponseDto = UserMapper.mapToUserResponseDto(user);
-
-        List<FriendRequestDto> sentFriendRequests = getSentFriendRequestDtoFromUser(user);
-        List<FriendRequestDto> receivedFriendRequests = getReceivedFriendRequestDtoFromUser(user);
-
-        userResponseDto.setSentFriendRequests(sentFriendRequests);
-        userResponseDto.setReceivedFriendRequests(receivedFriendRequests);
+        UserResponseDto userResponseDto = mapToUserResponseDto(user);
+        setAllLikedIds(userResponseDto);
 
         LoginResponseDto loginResponseDto = new LoginResponseDto();
         String jwtToken = jwtUtils.generateJWTToken(user.getEmail());
@@ -206,7 +235,10 @@ public class UserService {
             throw new AppException("Invalid OTP for email: " + userRegisterDto.getEmail(), HttpStatus.BAD_REQUEST);
         }
 
-        User user = UserMapper.mapToUserFromUserSaveDto(userRegisterDto, profileImage);
+        User user = UserMapper.mapToUserFromUserSaveDto(userRegisterDto);
+        if(profileImage != null && !profileImage.isEmpty()){
+            setProfileImage(user, profileImage);
+        }
         // Before saving, encrypt the password (during security implementation)
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         repo.save(user);
@@ -220,7 +252,7 @@ public class UserService {
     )
     @Transactional
     public ResponseEntity<Void> updateUser(UserUpdateDto userUpdateDto) {
-        User user = repo.findById(userUpdateDto.getId())
+        User user = repo.findActiveById(userUpdateDto.getId())
                 .orElseThrow(() -> new AppException("User not found with id: " + userUpdateDto.getId(), HttpStatus.NOT_FOUND));
         User updatedUser = UserMapper.updateUserFromUserUpdateDto(user, userUpdateDto);
 
@@ -244,28 +276,24 @@ public class UserService {
     )
     @Transactional
     public ResponseEntity<String> updateProfileImage(Long id, MultipartFile profileImage) {
-        User user = repo.findById(id)
+        User user = repo.findActiveById(id)
                 .orElseThrow(() -> new AppException("User not found with id: " + id, HttpStatus.NOT_FOUND));
 
         if(profileImage == null || profileImage.isEmpty()){
             user.setProfileImageType(null);
-            user.setProfileImage(null);
+            user.setProfileImageKey(null);
+            clearLegacyProfileImage(user);
         }else{
-            user.setProfileImageType(profileImage.getContentType());
-            try{
-                user.setProfileImage(profileImage.getBytes());
-            } catch (Exception e){
-                throw new AppException("Error while converting profile image to byte array: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
-            }
+            setProfileImage(user, profileImage);
         }
 
         User updatedUser = repo.save(user);
 
         String profileImageUrl;
-        if(updatedUser.getProfileImage() == null){
+        if(updatedUser.getProfileImageKey() == null){
             profileImageUrl = null;
         } else{
-            profileImageUrl = String.format("/users/profile/%d/image", updatedUser.getId());
+            profileImageUrl = UserMapper.profileImageUrl(updatedUser.getId(), updatedUser.getProfileImageKey());
         }
         PhiliaEvent updateProfileEvent = PhiliaEvent.builder()
                 .eventType(PhiliaEventType.UPDATE_PROFILE)
@@ -289,25 +317,28 @@ public class UserService {
             throw new AppException("Cannot send friend request to oneself", HttpStatus.BAD_REQUEST);
         }
 
-        User sender = repo.findById(senderId).orElseThrow(() -> new AppException("No user (sender) found with id: " + senderId, HttpStatus.NOT_FOUND));
-        User receiver = repo.findById(receiverId).orElseThrow(() -> new AppException("No user (receiver) found with id: " + receiverId, HttpStatus.NOT_FOUND));
-
-        sender.sendFriendRequest(receiver);
-
-        repo.save(sender);
-        repo.save(receiver);
-
-        FriendRequestMetaData metaData = new FriendRequestMetaData();
-        metaData.setSenderId(senderId);
-        metaData.setReceiverId(receiverId);
+        if(!repo.existsActiveById(receiverId)){
+            throw new AppException("No user (receiver) found with id: " + receiverId, HttpStatus.NOT_FOUND);
+        }
 
-        friendRequestMetaDataRepo.save(metaData);
+        // The pair's row is only inserted if there is none, otherwise its state tells why the request can't be sent
+        FriendshipState requested = FriendshipState.requestedBy(senderId, receiverId);
+        if(friendshipRepo.insertRequest(Math.min(senderId, receiverId), Math.max(senderId, receiverId), requested.ordinal(), LocalDateTime.now()) == 0){
+            FriendshipState state = friendshipRepo.findState(Math.min(senderId, receiverId), Math.max(senderId, receiverId)).orElse(null);
+            if(state == FriendshipState.FRIENDS) {
+                throw new AppException("You are already friends with this user.", HttpStatus.BAD_REQUEST);
+            }
+            if(state == requested) {
+                throw new AppException("Friend request already sent to this user.", HttpStatus.BAD_REQUEST);
+            }
+            throw new AppException("This user has already sent you a friend request.", HttpStatus.BAD_REQUEST);
+        }
 
         PhiliaEvent friendRequestSendEvent = PhiliaEvent.builder()
                 .eventType(PhiliaEventType.FRIEND_REQUEST_SEND)
-                .link(String.format("/users/%d", sender.getId()))
-                .notifierId(sender.getId())
-                .recipientId(receiver.getId())
+                .link(String.format("/users/%d", senderId))
+                .notifierId(senderId)
+                .recipientId(receiverId)
                 .message(" has sent you a friend request.")
                 .build();
         eventPublisher.publishEvent(friendRequestSendEvent);
@@ -321,21 +352,18 @@ public class UserService {
     )
     @Transactional
     public boolean acceptFriendRequest(Long receiverId, Long senderId) {
-        User sender = repo.findById(senderId).orElseThrow(() -> new AppException("No user (sender) found with id: " + senderId, HttpStatus.NOT_FOUND));
-        User receiver = repo.findById(receiverId).orElseThrow(() -> new AppException("No user (receiver) found with id: " + receiverId, HttpStatus.NOT_FOUND));
-
-        receiver.acceptFriendRequest(sender);
-
-        repo.save(sender);
-        repo.save(receiver);
-
-        friendRequestMetaDataRepo.deleteBySenderIdAndReceiverId(senderId, receiverId);
+        if(friendshipRepo.updateState(Math.min(senderId, receiverId), Math.max(senderId, receiverId),
+                FriendshipState.requestedBy(senderId, receiverId), FriendshipState.FRIENDS, LocalDateTime.now()) == 0){
+            throw new AppException("No friend request from this user.", HttpStatus.BAD_REQUEST);
+        }
+        repo.addToFriendsCount(List.of(senderId, receiverId), 1);
+        eventPublisher.publishEvent(new FriendshipChangedEvent(receiverId, senderId));
 
         PhiliaEvent friendRequestAcceptEvent = PhiliaEvent.builder()
                 .eventType(PhiliaEventType.FRIEND_REQUEST_ACCEPT)
-                .link(String.format("/users/%d", receiver.getId()))
-                .notifierId(receiver.getId())
-                .recipientId(sender.getId())
+                .link(String.format("/users/%d", receiverId))
+                .notifierId(receiverId)
+                .recipientId(senderId)
                 .message(" has accepted your friend request.")
                 .build();
         eventPublisher.publishEvent(friendRequestAcceptEvent);
@@ -349,21 +377,15 @@ public class UserService {
     )
     @Transactional
     public boolean rejectFriendRequest(Long receiverId, Long senderId) {
-        User sender = repo.findById(senderId).orElseThrow(() -> new AppException("No user (sender) found with id: " + senderId, HttpStatus.NOT_FOUND));
-        User receiver = repo.findById(receiverId).orElseThrow(() -> new AppException("No user (receiver) found with id: " + receiverId, HttpStatus.NOT_FOUND));
-
-        receiver.declineFriendRequest(sender);
-
-        repo.save(sender);
-        repo.save(receiver);
-
-        friendRequestMetaDataRepo.deleteBySenderIdAndReceiverId(senderId, receiverId);
+        if(friendshipRepo.deleteWithState(Math.min(senderId, receiverId), Math.max(senderId, receiverId), FriendshipState.requestedBy(senderId, receiverId)) == 0){
+            throw new AppException("No friend request from this user.", HttpStatus.BAD_REQUEST);
+        }
 
         PhiliaEvent friendRequestRejectEvent = PhiliaEvent.builder()
                 .eventType(PhiliaEventType.FRIEND_REQUEST_REJECT)
-                .link(String.format("/users/%d", receiver.getId()))
-                .notifierId(receiver.getId())
-                .recipientId(sender.getId())
+                .link(String.format("/users/%d", receiverId))
+                .notifierId(receiverId)
+                .recipientId(senderId)
                 .message(" has rejected your friend request.")
                 .build();
         eventPublisher.publishEvent(friendRequestRejectEvent);
@@ -377,15 +399,9 @@ public class UserService {
     )
     @Transactional
     public boolean cancelFriendRequest(Long senderId, Long receiverId) {
-        User sender = repo.findById(senderId).orElseThrow(() -> new AppException("No user (sender) found with id: " + senderId, HttpStatus.NOT_FOUND));
-        User receiver = repo.findById(receiverId).orElseThrow(() -> new AppException("No user (receiver) found with id: " + receiverId, HttpStatus.NOT_FOUND));
-
-        sender.cancelFriendRequest(receiver);
-
-        repo.save(sender);
-        repo.save(receiver);
-
-        friendRequestMetaDataRepo.deleteBySenderIdAndReceiverId(senderId, receiverId);
+        if(friendshipRepo.deleteWithState(Math.min(senderId, receiverId), Math.max(senderId, receiverId), FriendshipState.requestedBy(senderId, receiverId)) == 0){
+            throw new AppException("No sent friend request to this user.", HttpStatus.BAD_REQUEST);
+        }
 
         log.info("User id: {} cancelled friend request to id: {}", senderId, receiverId);
         return true;
@@ -396,13 +412,12 @@ public class UserService {
     )
     @Transactional
     public boolean removeFriend(Long userId, Long friendId) {
-        User user = repo.findById(userId).orElseThrow(() -> new AppException("No user found with id: " + userId, HttpStatus.NOT_FOUND));
-        User friend = repo.findById(friendId).orElseThrow(() -> new AppException("No user found with id: " + friendId, HttpStatus.NOT_FOUND));
-
-        user.removeFriend(friend);
-
-        repo.save(user);
-        repo.save(friend);
+        if(friendshipRepo.deleteWithState(Math.min(userId, friendId), Math.max(userId, friendId), FriendshipState.FRIENDS) == 0){
+            throw new AppException("This user is not in your friends list.", HttpStatus.BAD_REQUEST);
+        }
+        repo.addToFriendsCount(List.of(userId, friendId), -1);
+        timelineRepo.deleteAllBetweenUsers(userId, friendId);
+        eventPublisher.publishEvent(new FriendshipChangedEvent(userId, friendId));
 
         log.info("User id: {} removed friend for id: {}", userId, friendId);
         return true;
@@ -413,75 +428,53 @@ public class UserService {
     )
     @Transactional
     public ResponseEntity<Void> deleteUserById(Long id) {
-        User user = repo.findById(id).orElseThrow(() -> new AppException("No user found with id: " + id, HttpStatus.NOT_FOUND));
-
-        user.getFriends().forEach(friend -> friend.getFriends().remove(user));
-        user.getFriends().clear();
-
-        user.getSentFriendRequests().forEach(receiver -> receiver.getReceivedFriendRequests().remove(user));
-        user.getSentFriendRequests().clear();
-
-        user.getReceivedFriendRequests().forEach(sender -> sender.getSentFriendRequests().remove(user));
-        user.getReceivedFriendRequests().clear();
-
-        user.getLikedPosts().forEach(post -> post.getLikes().remove(user));
-        user.getLikedPosts().clear();
-
-        user.getLikedComments().forEach(comment -> comment.getLikes().remove(user));
-        user.getLikedComments().clear();
-
-        // Remove associated friend request metadata
-        friendRequestMetaDataRepo.deleteBySenderId(id);
-        friendRequestMetaDataRepo.deleteByReceiverId(id);
-
-        try{
-            notificationService.deleteAllNotificationsByRecipientId(id);
-        }catch (Exception e){
-            // Log the exception but do not prevent user deletion
-            log.warn("Failed to delete notifications for user id: {}, errorMessage: {}", id, e.getMessage());
-        }
-        repo.delete(user);
+        User user = repo.findActiveById(id).orElseThrow(() -> new AppException("No user found with id: " + id, HttpStatus.NOT_FOUND));
+        // The user is hidden at once, their relations, likes, comments and posts are purged in the background
+        accountDeletionService.requestDeletion(user.getId());
 
         log.info("Delete user by id: {}", id);
-        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).build();
     }
 
-    public List<FriendRequestDto> getSentFriendRequestDtoFromUser(User user){
-        List<FriendRequestMetaData> sentRequestsMetaData = friendRequestMetaDataRepo.findBySenderId(user.getId());
-        List<User> sentFriendRequests = new ArrayList<>(user.getSentFriendRequests());
+    private void setProfileImage(User user, MultipartFile profileImage) {
+        user.setProfileImageKey(blobStore.put(profileImage));
+        user.setProfileImageType(profileImage.getContentType());
+        clearLegacyProfileImage(user);
+        eventPublisher.publishEvent(new ImageUploadedEvent(user.getProfileImageKey(), user.getProfileImageType(), ImageSize.PROFILE_IMAGE_SIZES));
+    }
 
-        // Without the map, I had to call the DB everytime (findBySenderIdAndReceiverId(senderId, receiverId))
-        Map<Long, LocalDateTime> sentRequestTimeMap = new HashMap<>();
-        for(FriendRequestMetaData metaData : sentRequestsMetaData) {
-            sentRequestTimeMap.put(metaData.getReceiverId(), metaData.getCreatedAt());
+    private void clearLegacyProfileImage(User user) {
+        if(user.isHasLegacyProfileImage()){
+            userAvatarRepo.clearImage(user.getId());
+            user.setHasLegacyProfileImage(false);
         }
-
-        return sentFriendRequests.stream().map(receiver -> {
-            FriendRequestDto dto = new FriendRequestDto();
-            UserDto receiverDto = UserMapper.mapToUserDto(receiver);
-            dto.setUser(receiverDto);
-            dto.setSentAt(sentRequestTimeMap.get(receiver.getId()));
-            return dto;
-        }).sorted((a, b) -> b.getSentAt().compareTo(a.getSentAt())).toList();
     }
 
-    public List<FriendRequestDto> getReceivedFriendRequestDtoFromUser(User user){
-        List<FriendRequestMetaData> receivedRequestsMetaData = friendRequestMetaDataRepo.findByReceiverId(user.getId());
+    // Only the logged-in user's own profile carries the full liked sets, read as ids from the reactions
+    private void setAllLikedIds(UserResponseDto userResponseDto) {
+        userResponseDto.setLikedPostIds(reactionRepo.findAllReactedTargetIds(userResponseDto.getId(), ReactionTarget.POST));
+        userResponseDto.setLikedCommentIds(reactionRepo.findAllReactedTargetIds(userResponseDto.getId(), ReactionTarget.COMMENT));
+    }
 
-        List<User> receivedFriendRequests = new ArrayList<>(user.getReceivedFriendRequests());
-        Map<Long, LocalDateTime> receivedRequestTimeMap = new HashMap<>();
-        for(FriendRequestMetaData metaData : receivedRequestsMetaData) {
-            receivedRequestTimeMap.put(metaData.getSenderId(), metaData.getCreatedAt());
+    private Map<Long, ReactionType> findUserReactions(Long userId, ReactionTarget target, List<Long> targetIds) {
+        if(targetIds.isEmpty()){
+            return Map.of();
         }
-
-        return receivedFriendRequests.stream().map(sender -> {
-            FriendRequestDto dto = new FriendRequestDto();
-            UserDto receiverDto = UserMapper.mapToUserDto(sender);
-            dto.setUser(receiverDto);
-            dto.setSentAt(receivedRequestTimeMap.get(sender.getId()));
-            return dto;
-        }).sorted((a, b) -> b.getSentAt().compareTo(a.getSentAt())).toList();
+        return reactionRepo.findUserReactions(userId, target, targetIds).stream()
+                .collect(Collectors.toMap(UserReactionDto::getTargetId, UserReactionDto::getReaction));
     }
 
-
+    // The friends count is stored on the user, the sent and received requests are read with one query from friendships
+    private UserResponseDto mapToUserResponseDto(User user) {
+        UserResponseDto userResponseDto = UserMapper.mapToUserResponseDto(user);
+        List<FriendRequestDto> sentFriendRequests = new ArrayList<>();
+        List<FriendRequestDto> receivedFriendRequests = new ArrayList<>();
+        // Newest first
+        for(FriendRequestProjection request : friendshipRepo.findRequests(user.getId())){
+            (request.isSent() ? sentFriendRequests : receivedFriendRequests).add(UserMapper.mapToFriendRequestDto(request));
+        }
+        userResponseDto.setSentFriendRequests(sentFriendRequests);
+        userResponseDto.setReceivedFriendRequests(receivedFriendRequests);
+        return userResponseDto;
+    }
 }
@@ -14,6 +14,10 @@ public class AppUserDetails implements UserDetails{
         this.user = user;
     }
 
+    public Long getUserId() {
+        return user.getId();
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return List.of();
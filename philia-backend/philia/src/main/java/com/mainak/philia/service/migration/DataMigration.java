@@ -0,0 +1,10 @@
+package com.mainak.philia.service.migration;
+
+// A one-time data change that must be done before the application serves requests, run by DataMigrationRunner.
+// Ordered with @Order, copies of legacy data come before the counters computed from them.
+// migrate() must be safe to run again, a migration interrupted by a crash is run again on the next startup.
+public interface DataMigration {
+    String name();
+
+    void migrate();
+}
@@ -0,0 +1,35 @@
+package com.mainak.philia.service.migration;
+
+import com.mainak.philia.model.AppliedMigration;
+import com.mainak.philia.repository.AppliedMigrationRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Runs the data migrations not yet recorded in applied_migrations while the context starts. The web server and the @Scheduled jobs
+// start after all singletons are initialized, so nothing reads the migrated data before it is done. A failing migration fails the startup.
+@Slf4j
+@Component
+@AllArgsConstructor
+public class DataMigrationRunner implements SmartInitializingSingleton {
+    private final List<DataMigration> migrations;
+    private final AppliedMigrationRepository appliedMigrationRepo;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for(DataMigration migration : migrations){
+            if(appliedMigrationRepo.existsById(migration.name())){
+                continue;
+            }
+            long startedAt = System.currentTimeMillis();
+            log.info("Running data migration: {}", migration.name());
+            migration.migrate();
+            appliedMigrationRepo.save(new AppliedMigration(migration.name(), LocalDateTime.now()));
+            log.info("Data migration: {} finished in {} ms", migration.name(), System.currentTimeMillis() - startedAt);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.mainak.philia.service.migration;
+
+import com.mainak.philia.service.CounterReconciliationService;
+import lombok.AllArgsConstructor;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// The like/comment counter columns are added with 0 for the existing posts and comments, fills them once before they are served
+@Component
+@Order(20)
+@AllArgsConstructor
+public class EngagementCounterBackfill implements DataMigration {
+    private final CounterReconciliationService counterReconciliationService;
+
+    @Override
+    public String name() {
+        return "engagement-counter-backfill";
+    }
+
+    @Override
+    public void migrate() {
+        counterReconciliationService.reconcileCounters();
+    }
+}
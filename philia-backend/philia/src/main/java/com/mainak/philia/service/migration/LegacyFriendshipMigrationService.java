@@ -0,0 +1,58 @@
+package com.mainak.philia.service.migration;
+
+import com.mainak.philia.enums.FriendshipState;
+import com.mainak.philia.repository.FriendshipRepository;
+import com.mainak.philia.repository.UserRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+
+// Copies the user_friends/friend_requests join tables and friend_request_meta_data into friendships before friends are served.
+// The friend graph index loads on ApplicationReadyEvent, after the copy. Safe to run again, pairs that already have a row are skipped.
+@Slf4j
+@Service
+@Order(10)
+@AllArgsConstructor
+public class LegacyFriendshipMigrationService implements DataMigration {
+    public static final String NAME = "legacy-friendships";
+    // User ids per INSERT ... SELECT, each batch runs in its own short transaction
+    private static final long BATCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final UserRepository userRepo;
+    private final FriendshipRepository friendshipRepo;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void migrate() {
+        Long maxId = userRepo.findMaxId();
+        if(maxId == null || !LegacyTables.exist(dataSource, "user_friends", "friend_requests", "friend_request_meta_data")){
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int friendships = 0;
+        int requests = 0;
+        // Friendships first, a pair with both a friendship and a stale request stays friends
+        for(long fromId = 1; fromId <= maxId; fromId += BATCH_SIZE){
+            friendships += friendshipRepo.copyFriendships(fromId, fromId + BATCH_SIZE - 1, FriendshipState.FRIENDS.ordinal(), now);
+        }
+        for(long fromId = 1; fromId <= maxId; fromId += BATCH_SIZE){
+            requests += friendshipRepo.copyFriendRequests(fromId, fromId + BATCH_SIZE - 1,
+                    FriendshipState.REQUESTED_BY_A.ordinal(), FriendshipState.REQUESTED_BY_B.ordinal(), now);
+        }
+        // friends_count of the migrated users starts at 0
+        int counted = 0;
+        for(long fromId = 1; fromId <= maxId; fromId += BATCH_SIZE){
+            counted += userRepo.reconcileFriendsCounts(fromId, fromId + BATCH_SIZE - 1, FriendshipState.FRIENDS.ordinal());
+        }
+        log.info("Legacy friendship migration finished, friendships migrated: {}, friend requests migrated: {}, friends counts set: {}", friendships, requests, counted);
+    }
+}
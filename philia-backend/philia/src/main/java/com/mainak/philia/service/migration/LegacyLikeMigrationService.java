@@ -0,0 +1,69 @@
+package com.mainak.philia.service.migration;
+
+import com.mainak.philia.enums.EngagementCounter;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.repository.CommentRepository;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.ReactionCountRepository;
+import com.mainak.philia.repository.ReactionRepository;
+import com.mainak.philia.service.EngagementCounterBuffer;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.function.BiFunction;
+
+// Copies the post_likes/comment_likes join tables into reactions as LIKE reactions before likes are served.
+// likes_count already holds the totals, only the LIKE bars of the histograms are rebuilt. Safe to run again, copied likes are skipped.
+@Slf4j
+@Service
+@Order(10)
+@AllArgsConstructor
+public class LegacyLikeMigrationService implements DataMigration {
+    public static final String NAME = "legacy-likes";
+    // Target ids per INSERT ... SELECT, each batch runs in its own short transaction
+    private static final long BATCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final PostRepository postRepo;
+    private final CommentRepository commentRepo;
+    private final ReactionRepository reactionRepo;
+    private final ReactionCountRepository reactionCountRepo;
+    private final EngagementCounterBuffer engagementCounterBuffer;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void migrate() {
+        if(!LegacyTables.exist(dataSource, "post_likes", "comment_likes")){
+            return;
+        }
+        BiFunction<Long, Long, Integer> copyPostLikes = LegacyTables.hasColumn(dataSource, "post_likes", "liked_at")
+                ? reactionRepo::copyPostLikes : reactionRepo::copyUntimedPostLikes;
+        BiFunction<Long, Long, Integer> copyCommentLikes = LegacyTables.hasColumn(dataSource, "comment_likes", "liked_at")
+                ? reactionRepo::copyCommentLikes : reactionRepo::copyUntimedCommentLikes;
+        int postLikes = migrateInBatches(postRepo.findMaxId(), copyPostLikes, ReactionTarget.POST);
+        int commentLikes = migrateInBatches(commentRepo.findMaxId(), copyCommentLikes, ReactionTarget.COMMENT);
+        log.info("Legacy like migration finished, post likes migrated: {}, comment likes migrated: {}", postLikes, commentLikes);
+    }
+
+    private int migrateInBatches(Long maxId, BiFunction<Long, Long, Integer> copyRange, ReactionTarget target) {
+        if(maxId == null){
+            return 0;
+        }
+        String counter = (target == ReactionTarget.POST ? EngagementCounter.POST_REACTIONS : EngagementCounter.COMMENT_REACTIONS).name();
+        int migrated = 0;
+        for(long batchStart = 1; batchStart <= maxId; batchStart += BATCH_SIZE){
+            long fromId = batchStart;
+            long toId = fromId + BATCH_SIZE - 1;
+            migrated += copyRange.apply(fromId, toId);
+            engagementCounterBuffer.reconcile(() -> reactionCountRepo.reconcileCounts(target.ordinal(), counter, fromId, toId));
+        }
+        return migrated;
+    }
+}
@@ -0,0 +1,44 @@
+package com.mainak.philia.service.migration;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// The legacy tables exist only in databases created before their mapping was removed, a fresh database has nothing to copy
+final class LegacyTables {
+    private LegacyTables() {
+    }
+
+    static boolean exist(DataSource dataSource, String... tableNames) {
+        try(Connection connection = dataSource.getConnection()){
+            DatabaseMetaData metaData = connection.getMetaData();
+            for(String tableName : tableNames){
+                String name = metaData.storesUpperCaseIdentifiers() ? tableName.toUpperCase() : tableName;
+                try(ResultSet tables = metaData.getTables(connection.getCatalog(), null, name, new String[]{"TABLE"})){
+                    if(!tables.next()){
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (SQLException e){
+            throw new IllegalStateException("Could not look up the legacy tables", e);
+        }
+    }
+
+    // Columns added to a legacy table by a later mapping are missing in databases that never ran with it
+    static boolean hasColumn(DataSource dataSource, String tableName, String columnName) {
+        try(Connection connection = dataSource.getConnection()){
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? tableName.toUpperCase() : tableName;
+            String column = metaData.storesUpperCaseIdentifiers() ? columnName.toUpperCase() : columnName;
+            try(ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, column)){
+                return columns.next();
+            }
+        } catch (SQLException e){
+            throw new IllegalStateException("Could not look up the legacy columns", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.mainak.philia.service.storage;
+
+import com.mainak.philia.exception.AppException;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Content-addressed storage for binary data: the key of a blob is the SHA-256 hash of its content
+public interface BlobStore {
+    String put(InputStream content);
+
+    Resource get(String key);
+
+    boolean exists(String key);
+
+    default String put(MultipartFile file) {
+        try(InputStream content = file.getInputStream()){
+            return put(content);
+        } catch (IOException e){
+            throw new AppException("Error while reading uploaded file: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.mainak.philia.service.storage;
+
+import com.mainak.philia.dto.app.ImageUploadedEvent;
+import com.mainak.philia.enums.ImageSize;
+import com.mainak.philia.model.ImageDerivative;
+import com.mainak.philia.repository.ImageDerivativeRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+@Slf4j
+@Service
+public class ImageDerivativeService {
+    // Decoding a 10MB upload takes a lot of heap, so only a few images are resized at once
+    private static final int WORKERS = 2;
+    private static final int QUEUE_CAPACITY = 200;
+    private static final float JPEG_QUALITY = 0.85f;
+    // A small, highly compressed file can declare huge dimensions, larger sources are served as they are without decoding them
+    private static final long MAX_SOURCE_PIXELS = 40_000_000L;
+
+    private final ImageDerivativeRepository repo;
+    private final BlobStore blobStore;
+    private final ThreadPoolExecutor executor;
+    // Source keys queued or being resized, so repeated requests for a missing derivative queue it only once
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    public ImageDerivativeService(ImageDerivativeRepository repo, BlobStore blobStore) {
+        this.repo = repo;
+        this.blobStore = blobStore;
+        this.executor = new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), new CustomizableThreadFactory("image-derivative-"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onImageUploaded(ImageUploadedEvent event) {
+        requestDerivatives(event.getImageKey(), event.getContentType(), event.getSizes());
+    }
+
+    // Returns the derivative if it has been generated, otherwise queues it and returns null so the caller can fall back to the original
+    public ImageDerivative findOrRequestDerivative(String sourceKey, String contentType, ImageSize size) {
+        ImageDerivative derivative = repo.findBySourceKeyAndSize(sourceKey, size).orElse(null);
+        if(derivative == null){
+            requestDerivatives(sourceKey, contentType, List.of(size));
+        }
+        return derivative;
+    }
+
+    public void requestDerivatives(String sourceKey, String contentType, List<ImageSize> sizes) {
+        if(!pendingKeys.add(sourceKey)){
+            return;
+        }
+        try{
+            executor.execute(() -> {
+                try{
+                    generateDerivatives(sourceKey, contentType, sizes);
+                } catch (Exception e){
+                    log.error("Failed to generate derivatives for image: {}, errorMessage: {}", sourceKey, e.getMessage());
+                } finally{
+                    pendingKeys.remove(sourceKey);
+                }
+            });
+        } catch (RejectedExecutionException e){
+            // Queue is full, the derivative is requested again the next time it is served
+            pendingKeys.remove(sourceKey);
+            log.warn("Derivative queue full, skipping image: {}", sourceKey);
+        }
+    }
+
+    private void generateDerivatives(String sourceKey, String contentType, List<ImageSize> sizes) throws IOException {
+        List<ImageSize> missingSizes = sizes.stream()
+                .filter(size -> !repo.existsBySourceKeyAndSize(sourceKey, size))
+                .toList();
+        if(missingSizes.isEmpty()){
+            return;
+        }
+
+        BufferedImage source;
+        try(InputStream in = blobStore.get(sourceKey).getInputStream()){
+            source = decode(sourceKey, in);
+        }
+
+        for(ImageSize size : missingSizes){
+            ImageDerivative derivative = new ImageDerivative();
+            derivative.setSourceKey(sourceKey);
+            derivative.setSize(size);
+            // Formats ImageIO can't decode, oversized sources and images already within the size are served as they are
+            if(source == null || Math.max(source.getWidth(), source.getHeight()) <= size.getPixels()){
+                derivative.setDerivativeKey(sourceKey);
+                derivative.setContentType(contentType);
+            } else{
+                boolean hasAlpha = source.getColorModel().hasAlpha();
+                byte[] resized = encode(resize(source, size.getPixels(), hasAlpha), hasAlpha);
+                derivative.setDerivativeKey(blobStore.put(new ByteArrayInputStream(resized)));
+                derivative.setContentType(hasAlpha ? "image/png" : "image/jpeg");
+            }
+            try{
+                repo.save(derivative);
+            } catch (DataIntegrityViolationException e){
+                // Same image uploaded twice and resized concurrently
+                log.debug("Derivative {} of image: {} already exists", size, sourceKey);
+            }
+        }
+        log.info("Generated {} derivatives for image: {}", missingSizes.size(), sourceKey);
+    }
+
+    // Reads the dimensions from the header before decoding, returns null for unknown formats, undecodable data and sources above MAX_SOURCE_PIXELS
+    private BufferedImage decode(String sourceKey, InputStream in) throws IOException {
+        try(ImageInputStream iis = ImageIO.createImageInputStream(in)){
+            Iterator<ImageReader> readers = iis == null ? Collections.emptyIterator() : ImageIO.getImageReaders(iis);
+            if(!readers.hasNext()){
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try{
+                reader.setInput(iis, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if(pixels > MAX_SOURCE_PIXELS){
+                    log.warn("Image: {} has {} pixels, over the limit of {}, not resizing it", sourceKey, pixels, MAX_SOURCE_PIXELS);
+                    return null;
+                }
+                return reader.read(0);
+            } catch (IOException | RuntimeException e){
+                // Corrupt or truncated upload, recorded like an unknown format so it isn't decoded again on every request
+                log.warn("Image: {} could not be decoded, serving it as it is", sourceKey, e);
+                return null;
+            } finally{
+                reader.dispose();
+            }
+        }
+    }
+
+    // Halves the image until it is close to the target, a single bilinear step from a large image gives aliasing
+    private BufferedImage resize(BufferedImage source, int maxSide, boolean hasAlpha) {
+        double scale = (double) maxSide / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do{
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, width, height, null);
+            g.dispose();
+            current = step;
+        } while(width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private byte[] encode(BufferedImage image, boolean hasAlpha) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if(hasAlpha){
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        try(ImageOutputStream ios = ImageIO.createImageOutputStream(out)){
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally{
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,86 @@
+package com.mainak.philia.service.storage;
+
+import com.mainak.philia.dto.app.ImageMetadataDto;
+import com.mainak.philia.enums.ImageSize;
+import com.mainak.philia.model.ImageDerivative;
+import com.mainak.philia.utils.ImageUtils;
+import lombok.AllArgsConstructor;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+@Service
+@AllArgsConstructor
+public class ImageService {
+    private static final Duration IMMUTABLE_MAX_AGE = Duration.ofDays(365);
+
+    private final BlobStore blobStore;
+    private final ImageDerivativeService imageDerivativeService;
+
+    // Builds the response of an image endpoint, answering 304 from the metadata alone when the client already has the image
+    public ResponseEntity<Resource> serveImage(ImageMetadataDto metadata, String version, Integer size, String ifNoneMatch, Supplier<byte[]> legacyImageLoader) {
+        if(metadata.getImageKey() == null){
+            if(!metadata.isHasLegacyImage()){
+                return ResponseEntity.noContent().build();
+            }
+            // Not yet migrated to the blob store, no content hash to validate against
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache())
+                    .contentType(MediaType.parseMediaType(metadata.getImageType()))
+                    .body(new ByteArrayResource(legacyImageLoader.get()));
+        }
+
+        String imageKey = metadata.getImageKey();
+        String imageType = metadata.getImageType();
+        boolean isFinal = true;
+        ImageSize imageSize = size == null ? null : ImageSize.fitting(size);
+        if(imageSize != null){
+            ImageDerivative derivative = imageDerivativeService.findOrRequestDerivative(imageKey, imageType, imageSize);
+            if(derivative == null){
+                // Not resized yet, the original must not be cached as the derivative
+                isFinal = false;
+            } else{
+                imageKey = derivative.getDerivativeKey();
+                imageType = derivative.getContentType();
+            }
+        }
+
+        String eTag = ImageUtils.eTagOf(imageKey);
+        // Only a URL versioned with the current content can be cached without revalidation
+        CacheControl cacheControl = isFinal && ImageUtils.versionOf(metadata.getImageKey()).equals(version)
+                ? CacheControl.maxAge(IMMUTABLE_MAX_AGE).cachePublic().immutable()
+                : CacheControl.noCache().cachePublic();
+
+        if(matches(ifNoneMatch, eTag)){
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.parseMediaType(imageType))
+                .body(blobStore.get(imageKey));
+    }
+
+    // If-None-Match uses weak comparison and may list several tags or "*"
+    private boolean matches(String ifNoneMatch, String eTag) {
+        if(ifNoneMatch == null || ifNoneMatch.isBlank()){
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(eTag));
+    }
+}
@@ -0,0 +1,87 @@
+package com.mainak.philia.service.storage;
+
+import com.mainak.philia.dto.app.ImageUploadedEvent;
+import com.mainak.philia.enums.ImageSize;
+import com.mainak.philia.model.Post;
+import com.mainak.philia.model.PostImage;
+import com.mainak.philia.model.User;
+import com.mainak.philia.model.UserAvatar;
+import com.mainak.philia.repository.PostImageRepository;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.UserAvatarRepository;
+import com.mainak.philia.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+// Moves images stored inline in the posts/users tables into the BlobStore, enabled with philia.storage.migrate-legacy-images=true
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "philia.storage.migrate-legacy-images", havingValue = "true")
+public class LegacyImageMigrationService {
+    private final PostRepository postRepo;
+    private final UserRepository userRepo;
+    private final PostImageRepository postImageRepo;
+    private final UserAvatarRepository userAvatarRepo;
+    private final BlobStore blobStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    public LegacyImageMigrationService(PostRepository postRepo, UserRepository userRepo, PostImageRepository postImageRepo, UserAvatarRepository userAvatarRepo,
+                                       BlobStore blobStore, ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
+        this.postRepo = postRepo;
+        this.userRepo = userRepo;
+        this.postImageRepo = postImageRepo;
+        this.userAvatarRepo = userAvatarRepo;
+        this.blobStore = blobStore;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyImages() {
+        int migratedPosts = 0;
+        int migratedUsers = 0;
+        int batch;
+        // Each batch commits on its own, so at most 20 image rows are held in memory at once and the migration can resume after a restart
+        while((batch = transactionTemplate.execute(status -> migratePostBatch())) > 0){
+            migratedPosts += batch;
+        }
+        while((batch = transactionTemplate.execute(status -> migrateUserBatch())) > 0){
+            migratedUsers += batch;
+        }
+        log.info("Legacy image migration finished, posts migrated: {}, users migrated: {}", migratedPosts, migratedUsers);
+    }
+
+    private int migratePostBatch() {
+        List<Post> posts = postRepo.findTop20ByHasLegacyImageIsTrueAndImageKeyIsNull();
+        for(Post post : posts){
+            PostImage postImage = postImageRepo.getReferenceById(post.getId());
+            post.setImageKey(blobStore.put(new ByteArrayInputStream(postImage.getImage())));
+            postImage.setImage(null);
+            eventPublisher.publishEvent(new ImageUploadedEvent(post.getImageKey(), post.getImageType(), ImageSize.POST_IMAGE_SIZES));
+        }
+        return posts.size();
+    }
+
+    private int migrateUserBatch() {
+        List<User> users = userRepo.findTop20ByHasLegacyProfileImageIsTrueAndProfileImageKeyIsNull();
+        for(User user : users){
+            UserAvatar userAvatar = userAvatarRepo.getReferenceById(user.getId());
+            user.setProfileImageKey(blobStore.put(new ByteArrayInputStream(userAvatar.getImage())));
+            userAvatar.setImage(null);
+            eventPublisher.publishEvent(new ImageUploadedEvent(user.getProfileImageKey(), user.getProfileImageType(), ImageSize.PROFILE_IMAGE_SIZES));
+        }
+        return users.size();
+    }
+}
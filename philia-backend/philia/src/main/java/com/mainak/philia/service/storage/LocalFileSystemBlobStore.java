@@ -0,0 +1,106 @@
+package com.mainak.philia.service.storage;
+
+import com.mainak.philia.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+@Slf4j
+@Service
+public class LocalFileSystemBlobStore implements BlobStore {
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path rootDir;
+    private final Path tmpDir;
+
+    public LocalFileSystemBlobStore(@Value("${philia.storage.local.root-dir:./philia-data/blobs}") String rootDir) {
+        this.rootDir = Path.of(rootDir).toAbsolutePath().normalize();
+        this.tmpDir = this.rootDir.resolve("tmp");
+        try{
+            Files.createDirectories(this.tmpDir);
+        } catch (IOException e){
+            throw new IllegalStateException("Unable to create blob store directory: " + this.rootDir, e);
+        }
+        log.info("Local blob store initialized at: {}", this.rootDir);
+    }
+
+    @Override
+    public String put(InputStream content) {
+        Path tmpFile = null;
+        try{
+            // Hash while streaming to a temp file, so the content never has to be held in memory
+            tmpFile = Files.createTempFile(tmpDir, "upload-", ".tmp");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try(InputStream in = new DigestInputStream(content, digest); OutputStream out = Files.newOutputStream(tmpFile)){
+                in.transferTo(out);
+            }
+            String key = HexFormat.of().formatHex(digest.digest());
+
+            Path target = pathOf(key);
+            if(Files.exists(target)){
+                // Same content is already stored
+                Files.delete(tmpFile);
+                return key;
+            }
+            Files.createDirectories(target.getParent());
+            try{
+                Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e){
+                Files.deleteIfExists(tmpFile);
+            }
+            return key;
+        } catch (IOException | NoSuchAlgorithmException e){
+            deleteQuietly(tmpFile);
+            throw new AppException("Error while storing file: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Override
+    public Resource get(String key) {
+        Path path = pathOf(key);
+        if(!Files.exists(path)){
+            throw new AppException("File not found with key: " + key, HttpStatus.NOT_FOUND);
+        }
+        return new FileSystemResource(path);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(pathOf(key));
+    }
+
+    // Sharded as <root>/ab/cd/abcd... to keep directories small
+    private Path pathOf(String key) {
+        if(key == null || !KEY_PATTERN.matcher(key).matches()){
+            throw new AppException("Invalid file key: " + key, HttpStatus.BAD_REQUEST);
+        }
+        return rootDir.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private void deleteQuietly(Path path) {
+        if(path == null){
+            return;
+        }
+        try{
+            Files.deleteIfExists(path);
+        } catch (IOException e){
+            log.warn("Failed to delete temp file: {}, errorMessage: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mainak.philia.utils;
+
+import com.mainak.philia.exception.AppException;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+public class CursorUtils {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 50;
+
+    private static final String SEPARATOR = "|";
+
+    public record TimeCursor(LocalDateTime createdAt, Long id) {}
+
+    public static int resolvePageSize(Integer size) {
+        if(size == null || size < 1){
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    public static boolean isFirstPage(String cursor) {
+        return cursor == null || cursor.isBlank();
+    }
+
+    // The cursor is the (createdAt, id) key of the last item of the previous page, so it stays valid while new rows are inserted
+    public static String encodeTimeCursor(LocalDateTime createdAt, Long id) {
+        String raw = createdAt.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // For lists not ordered by time, the id of the last item of the previous page
+    public static String encodeIdCursor(Long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Long decodeIdCursor(String cursor) {
+        try{
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (Exception e){
+            throw new AppException("Invalid page cursor: " + cursor, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    public static TimeCursor decodeTimeCursor(String cursor) {
+        try{
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int idx = raw.lastIndexOf(SEPARATOR);
+            return new TimeCursor(LocalDateTime.parse(raw.substring(0, idx)), Long.parseLong(raw.substring(idx + 1)));
+        } catch (Exception e){
+            throw new AppException("Invalid page cursor: " + cursor, HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.mainak.philia.utils;
+
+import com.mainak.philia.enums.ImageSize;
+
+public class ImageUtils {
+    // Hex characters of the content hash used as URL version, 64 bits is plenty to tell two images of the same row apart
+    private static final int VERSION_LENGTH = 16;
+
+    // Image URLs carry a version derived from the content hash, so a new image gets a new URL and old ones can be cached forever
+    public static String imageUrl(String path, String imageKey) {
+        if(imageKey == null){
+            return path;
+        }
+        return path + "?v=" + versionOf(imageKey);
+    }
+
+    public static String imageUrl(String path, String imageKey, ImageSize size) {
+        String url = imageUrl(path, imageKey);
+        return url + (imageKey == null ? "?" : "&") + "size=" + size.getPixels();
+    }
+
+    public static String versionOf(String imageKey) {
+        return imageKey.substring(0, VERSION_LENGTH);
+    }
+
+    public static String eTagOf(String imageKey) {
+        return "\"" + imageKey + "\"";
+    }
+}
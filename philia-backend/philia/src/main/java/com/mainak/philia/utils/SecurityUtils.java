@@ -0,0 +1,16 @@
+package com.mainak.philia.utils;
+
+import com.mainak.philia.service.auth.AppUserDetails;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class SecurityUtils {
+    // Id of the logged-in user, null for anonymous requests
+    public static Long currentUserId() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(auth != null && auth.getPrincipal() instanceof AppUserDetails details){
+            return details.getUserId();
+        }
+        return null;
+    }
+}
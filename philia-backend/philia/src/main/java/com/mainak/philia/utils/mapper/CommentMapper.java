@@ -2,7 +2,9 @@ package com.mainak.philia.utils.mapper;
 
 import com.mainak.philia.dto.comment.CommentCreateDto;
 import com.mainak.philia.dto.comment.CommentDto;
+import com.mainak.philia.dto.comment.CommentProjection;
 import com.mainak.philia.dto.comment.CommentUpdateDto;
+import com.mainak.philia.dto.comment.UserCommentDto;
 import com.mainak.philia.model.Comment;
 import com.mainak.philia.model.Post;
 import com.mainak.philia.model.User;
@@ -30,9 +32,30 @@ public class CommentMapper {
         commentDto.setPostId(comment.getPost().getId());
         commentDto.setContent(comment.getContent());
         commentDto.setCommentLikesUrl(String.format("/comments/%d/likes", comment.getId()));
-        commentDto.setLikesCount((long)comment.getLikes().size());
+        commentDto.setLikesCount(comment.getLikesCount());
         commentDto.setCreatedAt(comment.getCreatedAt());
         commentDto.setUser(UserMapper.mapToUserDto(comment.getUser()));
         return commentDto;
     }
+
+    public static CommentDto mapToCommentDto(CommentProjection projection){
+        return fillFromProjection(new CommentDto(), projection);
+    }
+
+    public static UserCommentDto mapToUserCommentDto(CommentProjection projection, String postTitle){
+        UserCommentDto userCommentDto = fillFromProjection(new UserCommentDto(), projection);
+        userCommentDto.setPostTitle(postTitle);
+        return userCommentDto;
+    }
+
+    private static <T extends CommentDto> T fillFromProjection(T commentDto, CommentProjection projection){
+        commentDto.setId(projection.getId());
+        commentDto.setPostId(projection.getPostId());
+        commentDto.setContent(projection.getContent());
+        commentDto.setCommentLikesUrl(String.format("/comments/%d/likes", projection.getId()));
+        commentDto.setLikesCount(projection.getLikesCount());
+        commentDto.setCreatedAt(projection.getCreatedAt());
+        commentDto.setUser(UserMapper.mapToUserDto(projection.getUserId(), projection.getUserFirstName(), projection.getUserLastName(), projection.isUserHasProfileImage(), projection.getUserProfileImageKey()));
+        return commentDto;
+    }
 }
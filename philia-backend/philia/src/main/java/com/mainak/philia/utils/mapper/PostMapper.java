@@ -2,50 +2,30 @@ package com.mainak.philia.utils.mapper;
 
 import com.mainak.philia.dto.post.PostCreateDto;
 import com.mainak.philia.dto.post.PostDto;
+import com.mainak.philia.dto.post.PostProjection;
 import com.mainak.philia.dto.post.PostUpdateDto;
-import com.mainak.philia.dto.user.UserDto;
-import com.mainak.philia.exception.AppException;
+import com.mainak.philia.enums.ImageSize;
 import com.mainak.philia.model.Post;
 import com.mainak.philia.model.User;
-import org.springframework.http.HttpStatus;
-import org.springframework.web.multipart.MultipartFile;
+import com.mainak.philia.utils.ImageUtils;
 
-import java.util.Set;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class PostMapper {
-    public static Post mapToPostFromPostCreateDto(PostCreateDto postCreateDto, User user, MultipartFile postImage){
+    public static Post mapToPostFromPostCreateDto(PostCreateDto postCreateDto, User user){
         Post post = new Post();
         post.setCaption(postCreateDto.getCaption());
         post.setUser(user);
         user.getPosts().add(post);
-
-        if(postImage == null || postImage.isEmpty()){
-            return post;
-        }
-
-        post.setImageType(postImage.getContentType());
-        try{
-            post.setImage(postImage.getBytes());
-        } catch (Exception e){
-            throw new AppException("Error while converting post image to byte array: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
-        }
         return post;
     }
 
-    public static Post updatePostFromPostUpdateDto(Post post, PostUpdateDto dto, MultipartFile postImage){
+    public static Post updatePostFromPostUpdateDto(Post post, PostUpdateDto dto){
         post.setCaption(dto.getCaption());
-
-        // Not allowing user to update post image to null/empty (basically can't remove image from post)
-        if(postImage == null || postImage.isEmpty()){
-            return post;
-        }
-        post.setImageType(postImage.getContentType());
-        try{
-            post.setImage(postImage.getBytes());
-        } catch (Exception e){
-            throw new AppException("Error while converting post image to byte array: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
-        }
         return post;
     }
 
@@ -54,21 +34,49 @@ public class PostMapper {
         postDto.setId(post.getId());
         postDto.setCaption(post.getCaption());
 //        postDto.setImage(post.getImage());
-        if(post.getImage() == null){
+        if(post.getImageKey() == null && !post.isHasLegacyImage()){
             postDto.setImageUrl(null);
         } else{
-            postDto.setImageUrl(String.format("/posts/%d/image", post.getId()));
+            postDto.setImageUrl(ImageUtils.imageUrl(String.format("/posts/%d/image", post.getId()), post.getImageKey(), ImageSize.FEED));
         }
         postDto.setCreatedAt(post.getCreatedAt());
         postDto.setUser(UserMapper.mapToUserDto(post.getUser()));
         postDto.setPostCommentsUrl(String.format("/posts/%d/comments", post.getId()));
 
-        Set<UserDto> likes = post.getLikes().stream().map(UserMapper::mapToUserDto).collect(Collectors.toSet());
-
         postDto.setPostLikesUrl(String.format("/posts/%d/likes", post.getId()));
-        postDto.setLikesCount((long)likes.size());
-        postDto.setCommentsCount((long)post.getComments().size());
+        postDto.setLikesCount(post.getLikesCount());
+        postDto.setCommentsCount(post.getCommentsCount());
 
         return postDto;
     }
+
+    public static PostDto mapToPostDto(PostProjection projection){
+        PostDto postDto = new PostDto();
+        postDto.setId(projection.getId());
+        postDto.setCaption(projection.getCaption());
+        if(!projection.isHasImage()){
+            postDto.setImageUrl(null);
+        } else{
+            postDto.setImageUrl(ImageUtils.imageUrl(String.format("/posts/%d/image", projection.getId()), projection.getImageKey(), ImageSize.FEED));
+        }
+        postDto.setCreatedAt(projection.getCreatedAt());
+        postDto.setUser(UserMapper.mapToUserDto(projection.getUserId(), projection.getUserFirstName(), projection.getUserLastName(), projection.isUserHasProfileImage(), projection.getUserProfileImageKey()));
+        postDto.setPostCommentsUrl(String.format("/posts/%d/comments", projection.getId()));
+        postDto.setPostLikesUrl(String.format("/posts/%d/likes", projection.getId()));
+        postDto.setLikesCount(projection.getLikesCount());
+        postDto.setCommentsCount(projection.getCommentsCount());
+
+        return postDto;
+    }
+
+    // Keeps the order of the given ids, ids without a matching row (e.g. deleted posts) are skipped
+    public static List<PostDto> mapToPostDtosInOrder(Collection<Long> postIds, List<PostProjection> projections){
+        Map<Long, PostProjection> projectionsById = projections.stream()
+                .collect(Collectors.toMap(PostProjection::getId, Function.identity()));
+
+        return postIds.stream()
+                .filter(projectionsById::containsKey)
+                .map(postId -> mapToPostDto(projectionsById.get(postId)))
+                .toList();
+    }
 }
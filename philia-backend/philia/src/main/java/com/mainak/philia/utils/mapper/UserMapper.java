@@ -1,22 +1,19 @@
 package com.mainak.philia.utils.mapper;
 
+import com.mainak.philia.dto.user.FriendRequestDto;
+import com.mainak.philia.dto.user.FriendRequestProjection;
+import com.mainak.philia.dto.user.LikerProjection;
 import com.mainak.philia.dto.user.UserDto;
+import com.mainak.philia.dto.user.UserProjection;
 import com.mainak.philia.dto.user.UserResponseDto;
 import com.mainak.philia.dto.user.UserRegisterDto;
 import com.mainak.philia.dto.user.UserUpdateDto;
-import com.mainak.philia.exception.AppException;
-import com.mainak.philia.model.Comment;
-import com.mainak.philia.model.Post;
+import com.mainak.philia.enums.ImageSize;
 import com.mainak.philia.model.User;
-import org.springframework.http.HttpStatus;
-import org.springframework.web.multipart.MultipartFile;
-
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import com.mainak.philia.utils.ImageUtils;
 
 public class UserMapper {
-    public static User mapToUserFromUserSaveDto(UserRegisterDto userRegisterDto, MultipartFile profileImage){
+    public static User mapToUserFromUserSaveDto(UserRegisterDto userRegisterDto){
         User user = new User();
         user.setFirstName(userRegisterDto.getFirstName());
         user.setLastName(userRegisterDto.getLastName());
@@ -25,16 +22,6 @@ public class UserMapper {
         user.setDateOfBirth(userRegisterDto.getDateOfBirth());
         user.setEmail(userRegisterDto.getEmail());
         user.setPassword(userRegisterDto.getPassword());
-
-        if(profileImage == null || profileImage.isEmpty()){
-            return user;
-        }
-        user.setProfileImageType(profileImage.getContentType());
-        try{
-            user.setProfileImage(profileImage.getBytes());
-        } catch (Exception e){
-            throw new AppException("Error while converting profile image to byte array: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
-        }
         return user;
     }
 
@@ -48,18 +35,36 @@ public class UserMapper {
     }
 
     public static UserDto mapToUserDto(User user) {
+        return mapToUserDto(user.getId(), user.getFirstName(), user.getLastName(), hasProfileImage(user), user.getProfileImageKey());
+    }
+
+    public static UserDto mapToUserDto(Long id, String firstName, String lastName, boolean hasProfileImage, String profileImageKey) {
         UserDto userDto = new UserDto();
-        userDto.setId(user.getId());
-        userDto.setFirstName(user.getFirstName());
-        userDto.setLastName(user.getLastName());
-        if(user.getProfileImage() == null){
+        userDto.setId(id);
+        userDto.setFirstName(firstName);
+        userDto.setLastName(lastName);
+        if(!hasProfileImage){
             userDto.setProfileImageUrl(null);
         } else{
-            userDto.setProfileImageUrl(String.format("/users/profile/%d/image", user.getId()));
+            // Small version for avatars in lists, the profile page uses the full image
+            userDto.setProfileImageUrl(ImageUtils.imageUrl(String.format("/users/profile/%d/image", id), profileImageKey, ImageSize.AVATAR));
         }
         return userDto;
     }
 
+    public static UserDto mapToUserDto(LikerProjection liker) {
+        return mapToUserDto(liker.getUserId(), liker.getFirstName(), liker.getLastName(), liker.isHasProfileImage(), liker.getProfileImageKey());
+    }
+
+    public static UserDto mapToUserDto(UserProjection user) {
+        return mapToUserDto(user.getId(), user.getFirstName(), user.getLastName(), user.isHasProfileImage(), user.getProfileImageKey());
+    }
+
+    public static FriendRequestDto mapToFriendRequestDto(FriendRequestProjection request) {
+        UserDto user = mapToUserDto(request.getId(), request.getFirstName(), request.getLastName(), request.isHasProfileImage(), request.getProfileImageKey());
+        return new FriendRequestDto(user, request.getSentAt());
+    }
+
     public static UserResponseDto mapToUserResponseDto(User user) {
         UserResponseDto userResponseDto = new UserResponseDto();
         userResponseDto.setId(user.getId());
@@ -71,24 +76,25 @@ public class UserMapper {
         userResponseDto.setDateOfBirth(user.getDateOfBirth());
         userResponseDto.setCreatedAt(user.getCreatedAt());
 
-        if(user.getProfileImage() == null){
+        if(!hasProfileImage(user)){
             userResponseDto.setProfileImageUrl(null);
         } else{
-            userResponseDto.setProfileImageUrl(String.format("/users/profile/%d/image", user.getId()));
+            userResponseDto.setProfileImageUrl(profileImageUrl(user.getId(), user.getProfileImageKey()));
         }
 
-        Long friendsCount = (long) user.getFriends().size();
-
-        Set<Long> postLikedIds = user.getLikedPosts().stream().map(Post::getId).collect(Collectors.toSet());
-        Set<Long> commentLikedIds = user.getLikedComments().stream().map(Comment::getId).collect(Collectors.toSet());
-
         userResponseDto.setUserPostsUrl(String.format("/users/profile/%d/posts", user.getId()));
         userResponseDto.setUserCommentsUrl(String.format("/users/%d/comments", user.getId()));
         userResponseDto.setFriendsUrl(String.format("/users/%d/friends", user.getId()));
-        userResponseDto.setFriendsCount(friendsCount);
-        userResponseDto.setLikedPostIds(postLikedIds);
-        userResponseDto.setLikedCommentIds(commentLikedIds);
+        userResponseDto.setFriendsCount(user.getFriendsCount());
 
         return userResponseDto;
     }
+
+    public static String profileImageUrl(Long userId, String profileImageKey) {
+        return ImageUtils.imageUrl(String.format("/users/profile/%d/image", userId), profileImageKey);
+    }
+
+    private static boolean hasProfileImage(User user) {
+        return user.getProfileImageKey() != null || user.isHasLegacyProfileImage();
+    }
 }
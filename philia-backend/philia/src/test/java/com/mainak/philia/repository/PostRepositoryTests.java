@@ -0,0 +1,94 @@
+package com.mainak.philia.repository;
+
+import com.mainak.philia.dto.post.PostDto;
+import com.mainak.philia.dto.post.PostProjection;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
+import com.mainak.philia.model.Post;
+import com.mainak.philia.model.Reaction;
+import com.mainak.philia.model.User;
+import com.mainak.philia.utils.mapper.PostMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:philia;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class PostRepositoryTests {
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        User author = newUser("Author");
+        User liker = newUser("Liker");
+        for(int i = 0; i < 30; i++){
+            Post post = new Post();
+            post.setCaption("Post " + i);
+            post.setUser(author);
+            post.setCreatedAt(LocalDateTime.now().minusMinutes(i));
+            entityManager.persist(post);
+            entityManager.persist(new Reaction(ReactionTarget.POST, post.getId(), liker.getId(), ReactionType.LIKE, LocalDateTime.now()));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void feedPageIsBuiltWithASingleStatement() {
+        List<PostDto> page = postRepository.findFeedPage(PageRequest.of(0, 20)).stream()
+                .map(PostMapper::mapToPostDto)
+                .toList();
+
+        assertEquals(20, page.size());
+        assertEquals("Post 0", page.get(0).getCaption());
+        assertEquals("Author", page.get(0).getUser().getFirstName());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void nextFeedPageIsBuiltWithASingleStatement() {
+        List<PostProjection> firstPage = postRepository.findFeedPage(PageRequest.of(0, 20));
+        PostProjection last = firstPage.get(firstPage.size() - 1);
+        statistics.clear();
+
+        List<PostDto> secondPage = postRepository.findFeedPageBefore(last.getCreatedAt(), last.getId(), PageRequest.of(0, 20)).stream()
+                .map(PostMapper::mapToPostDto)
+                .toList();
+
+        assertEquals(10, secondPage.size());
+        assertEquals("Post 20", secondPage.get(0).getCaption());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    private User newUser(String firstName) {
+        User user = new User();
+        user.setEmail(firstName.toLowerCase() + "@philia.com");
+        user.setFirstName(firstName);
+        user.setLastName("Philia");
+        return entityManager.persist(user);
+    }
+}
@@ -0,0 +1,215 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.enums.EngagementCounter;
+import com.mainak.philia.enums.ReactionTarget;
+import com.mainak.philia.enums.ReactionType;
+import com.mainak.philia.model.Comment;
+import com.mainak.philia.model.Post;
+import com.mainak.philia.model.User;
+import com.mainak.philia.repository.CommentRepository;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Hammers a single post/comment with reactions and removals from many threads while the counter buffer is flushed concurrently
+@DataJpaTest(properties = "spring.datasource.url=jdbc:h2:mem:engagement;MODE=MySQL;DATABASE_TO_LOWER=TRUE;LOCK_TIMEOUT=10000")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({EngagementMutationService.class, EngagementCounterBuffer.class})
+// Every mutation has to commit on its own, as it does in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EngagementMutationServiceTests {
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 250;
+    private static final long TIMEOUT_SECONDS = 60;
+    // Wall-clock throughput depends on the machine, so the floor is off unless set, e.g. -Dphilia.test.min-operations-per-second=100
+    private static final double MIN_OPERATIONS_PER_SECOND = Double.parseDouble(System.getProperty("philia.test.min-operations-per-second", "0"));
+
+    @Autowired
+    private EngagementMutationService engagementMutationService;
+
+    @Autowired
+    private EngagementCounterBuffer engagementCounterBuffer;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Post post;
+    private Comment comment;
+    private List<User> likers;
+
+    @BeforeEach
+    void setUp() {
+        User author = userRepository.save(newUser());
+        post = new Post();
+        post.setCaption("Hot post");
+        post.setUser(author);
+        post = postRepository.save(post);
+
+        comment = new Comment();
+        comment.setContent("Hot comment");
+        comment.setUser(author);
+        comment.setPost(post);
+        comment = commentRepository.save(comment);
+
+        likers = new ArrayList<>();
+        for(int i = 0; i < THREADS; i++){
+            likers.add(userRepository.save(newUser()));
+        }
+    }
+
+    @Test
+    void concurrentPostReactionsKeepExactCounts() throws Exception {
+        int expectedLikes = hammer(ReactionTarget.POST, post.getId());
+
+        assertEquals(expectedLikes, postRepository.findLikesCountById(post.getId()).orElseThrow());
+        assertEquals(0, engagementCounterBuffer.pending(EngagementCounter.POST_LIKES, post.getId()));
+        assertHistogramMatchesReactions(ReactionTarget.POST, post.getId(), expectedLikes);
+    }
+
+    @Test
+    void concurrentCommentReactionsKeepExactCounts() throws Exception {
+        int expectedLikes = hammer(ReactionTarget.COMMENT, comment.getId());
+
+        assertEquals(expectedLikes, commentRepository.findLikesCountById(comment.getId()).orElseThrow());
+        assertEquals(0, engagementCounterBuffer.pending(EngagementCounter.COMMENT_LIKES, comment.getId()));
+        assertHistogramMatchesReactions(ReactionTarget.COMMENT, comment.getId(), expectedLikes);
+    }
+
+    @Test
+    void mutationAbortedByLockContentionIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        boolean result = engagementMutationService.execute(() -> {
+            if(attempts.incrementAndGet() < 3){
+                throw new CannotAcquireLockException("Deadlock found when trying to get lock");
+            }
+            return true;
+        });
+
+        assertTrue(result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void mutationIsNotRetriedForever() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(CannotAcquireLockException.class, () -> engagementMutationService.execute(() -> {
+            attempts.incrementAndGet();
+            throw new CannotAcquireLockException("Deadlock found when trying to get lock");
+        }));
+        assertEquals(5, attempts.get());
+    }
+
+    // Every bar of the histogram must match the reactions of that type, and the bars must add up to the total
+    private void assertHistogramMatchesReactions(ReactionTarget target, Long targetId, int expectedReactions) {
+        long total = 0;
+        for(ReactionType reaction : ReactionType.values()){
+            Long reactions = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reactions WHERE target_type = ? AND target_id = ? AND reaction = ?",
+                    Long.class, target.ordinal(), targetId, reaction.ordinal());
+            Long counted = jdbcTemplate.queryForList("SELECT reactions_count FROM reaction_counts WHERE target_type = ? AND target_id = ? AND reaction = ?",
+                    Long.class, target.ordinal(), targetId, reaction.ordinal()).stream().findFirst().orElse(0L);
+            assertEquals(reactions, counted, "Histogram of " + reaction);
+            total += counted;
+        }
+        assertEquals(expectedReactions, total);
+    }
+
+    // Each thread reacts with a random type and removes its reaction at random as its own user, checking every result against the state it expects.
+    // Returns the number of users who reacted to the target at the end, with the counters flushed.
+    private int hammer(ReactionTarget target, Long targetId) throws Exception {
+        ReactionType[] reactions = ReactionType.values();
+        // A reaction only adds a row when the user hadn't reacted yet, a change of type returns the previous one
+        BiFunction<Long, Long, Boolean> like = (id, userId) ->
+                engagementMutationService.react(target, id, userId, reactions[ThreadLocalRandom.current().nextInt(reactions.length)]) == null;
+        BiFunction<Long, Long, Boolean> unlike = (id, userId) -> engagementMutationService.removeReaction(target, id, userId) != null;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger mismatches = new AtomicInteger();
+        List<Future<Boolean>> finalStates = new ArrayList<>();
+
+        for(User liker : likers){
+            finalStates.add(executor.submit(() -> {
+                start.await();
+                boolean liked = false;
+                for(int i = 0; i < OPERATIONS_PER_THREAD; i++){
+                    boolean doLike = ThreadLocalRandom.current().nextBoolean();
+                    BiFunction<Long, Long, Boolean> mutation = doLike ? like : unlike;
+                    boolean changed = engagementMutationService.execute(() -> mutation.apply(targetId, liker.getId()));
+                    // A like only changes a row when it wasn't liked yet, an unlike only when it was
+                    if(changed != (doLike != liked)){
+                        mismatches.incrementAndGet();
+                    }
+                    liked = doLike;
+                }
+                return liked;
+            }));
+        }
+        // Stands in for the scheduled flush, which updates the same counter row the likes journal against
+        Future<?> flusher = executor.submit(() -> {
+            start.await();
+            while(running.get()){
+                engagementCounterBuffer.flush();
+                Thread.sleep(5);
+            }
+            return null;
+        });
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        int expectedLikes = 0;
+        for(Future<Boolean> finalState : finalStates){
+            if(finalState.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)){
+                expectedLikes++;
+            }
+        }
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        running.set(false);
+        flusher.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        executor.shutdown();
+        engagementCounterBuffer.flush();
+
+        double operationsPerSecond = THREADS * OPERATIONS_PER_THREAD / seconds;
+        assertEquals(0, mismatches.get());
+        assertTrue(operationsPerSecond >= MIN_OPERATIONS_PER_SECOND,
+                String.format("Throughput too low: %d react/remove operations from %d threads in %.2fs, %.0f ops/s", THREADS * OPERATIONS_PER_THREAD, THREADS, seconds, operationsPerSecond));
+        return expectedLikes;
+    }
+
+    private User newUser() {
+        User user = new User();
+        user.setEmail(UUID.randomUUID() + "@philia.com");
+        user.setFirstName("Liker");
+        user.setLastName("Philia");
+        return user;
+    }
+}
@@ -0,0 +1,210 @@
+package com.mainak.philia.service;
+
+import com.mainak.philia.dto.user.AccountDeletionRequestedEvent;
+import com.mainak.philia.dto.user.FriendshipChangedEvent;
+import com.mainak.philia.dto.user.FriendshipDto;
+import com.mainak.philia.repository.FriendshipRepository;
+import com.mainak.philia.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class FriendGraphIndexTests {
+    private static final long[] NONE = new long[0];
+
+    private UserRepository userRepository;
+    private FriendshipRepository friendshipRepository;
+    private FriendGraphIndex friendGraphIndex;
+
+    // 1 is friends with 2, 3 and 4. 5 is a friend of 2, 3 and 4, 6 of 2 and 3, 7 of 4 only. 2 and 3 are also friends.
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        friendshipRepository = mock(FriendshipRepository.class);
+        friendGraphIndex = new FriendGraphIndex(userRepository, friendshipRepository);
+
+        long[][] friendships = {{1, 2}, {1, 3}, {1, 4}, {2, 3}, {2, 5}, {3, 5}, {4, 5}, {2, 6}, {3, 6}, {4, 7}};
+        mockFriendships(userRepository, friendshipRepository, 7, Arrays.asList(friendships));
+        friendGraphIndex.load();
+    }
+
+    @Test
+    void friendsOfFriendsAreRankedByMutualFriends() {
+        List<FriendGraphIndex.MutualFriendCount> suggestions = friendGraphIndex.findMutualFriendCounts(1, NONE, 10);
+
+        assertEquals(List.of(
+                new FriendGraphIndex.MutualFriendCount(5, 3),
+                new FriendGraphIndex.MutualFriendCount(6, 2),
+                new FriendGraphIndex.MutualFriendCount(7, 1)
+        ), suggestions);
+        // The graph is served from memory once loaded
+        verify(friendshipRepository, never()).findActiveFriendIds(anyLong());
+    }
+
+    @Test
+    void excludedUsersAndLimitAreApplied() {
+        List<FriendGraphIndex.MutualFriendCount> suggestions = friendGraphIndex.findMutualFriendCounts(1, new long[]{5}, 1);
+
+        assertEquals(List.of(new FriendGraphIndex.MutualFriendCount(6, 2)), suggestions);
+    }
+
+    @Test
+    void changedFriendshipsAreReadAgain() {
+        // 1 and 5 became friends
+        when(friendshipRepository.findActiveFriendIds(1L)).thenReturn(List.of(5L, 2L, 3L, 4L));
+        when(friendshipRepository.findActiveFriendIds(5L)).thenReturn(List.of(1L, 2L, 3L, 4L));
+        friendGraphIndex.onFriendshipChanged(new FriendshipChangedEvent(1L, 5L));
+
+        assertArrayEquals(new long[]{2, 3, 4, 5}, friendGraphIndex.getFriendIds(1));
+        assertEquals(List.of(
+                new FriendGraphIndex.MutualFriendCount(6, 2),
+                new FriendGraphIndex.MutualFriendCount(7, 1)
+        ), friendGraphIndex.findMutualFriendCounts(1, NONE, 10));
+    }
+
+    @Test
+    void incrementalScoresMatchARecount() {
+        Random random = new Random(42);
+        int users = 40;
+        // The database, starting from the graph of setUp
+        Map<Long, Set<Long>> friends = new HashMap<>();
+        for(long userId = 1; userId <= users; userId++){
+            friends.put(userId, toSet(friendGraphIndex.getFriendIds(userId)));
+        }
+        when(friendshipRepository.findActiveFriendIds(anyLong())).thenAnswer(invocation -> new ArrayList<>(friends.get(invocation.<Long>getArgument(0))));
+
+        for(int change = 0; change < 500; change++){
+            long userId = random.nextInt(users) + 1;
+            long friendId = random.nextInt(users) + 1;
+            if(userId == friendId){
+                continue;
+            }
+            if(friends.get(userId).remove(friendId)){
+                friends.get(friendId).remove(userId);
+            } else{
+                friends.get(userId).add(friendId);
+                friends.get(friendId).add(userId);
+            }
+            friendGraphIndex.onFriendshipChanged(new FriendshipChangedEvent(userId, friendId));
+        }
+
+        // A fresh index counts everything from the final graph
+        List<long[]> pairs = new ArrayList<>();
+        for(long userId = 1; userId <= users; userId++){
+            for(long friendId : friends.get(userId)){
+                if(userId < friendId){
+                    pairs.add(new long[]{userId, friendId});
+                }
+            }
+        }
+        UserRepository recountUserRepository = mock(UserRepository.class);
+        FriendshipRepository recountFriendshipRepository = mock(FriendshipRepository.class);
+        mockFriendships(recountUserRepository, recountFriendshipRepository, users, pairs);
+        FriendGraphIndex recount = new FriendGraphIndex(recountUserRepository, recountFriendshipRepository);
+        recount.load();
+
+        for(long userId = 1; userId <= users; userId++){
+            assertArrayEquals(recount.getFriendIds(userId), friendGraphIndex.getFriendIds(userId));
+            assertEquals(recount.findMutualFriendCounts(userId, NONE, users), friendGraphIndex.findMutualFriendCounts(userId, NONE, users));
+        }
+    }
+
+    // Users have more friends of friends than are kept, suggestions past the kept ones are counted again from the graph
+    @Test
+    void trimmedCandidatesMatchAFullCount() {
+        Random random = new Random(7);
+        int users = 300;
+        Map<Long, Set<Long>> friends = new HashMap<>();
+        List<long[]> pairs = new ArrayList<>();
+        for(long userId = 1; userId <= users; userId++){
+            friends.put(userId, new TreeSet<>());
+        }
+        for(int pair = 0; pair < 3000; pair++){
+            long userId = random.nextInt(users) + 1;
+            long friendId = random.nextInt(users) + 1;
+            if(userId != friendId && friends.get(userId).add(friendId)){
+                friends.get(friendId).add(userId);
+                pairs.add(new long[]{Math.min(userId, friendId), Math.max(userId, friendId)});
+            }
+        }
+        mockFriendships(userRepository, friendshipRepository, users, pairs);
+        friendGraphIndex.load();
+        when(friendshipRepository.findActiveFriendIds(anyLong())).thenAnswer(invocation -> new ArrayList<>(friends.get(invocation.<Long>getArgument(0))));
+
+        for(int change = 0; change < 300; change++){
+            long userId = random.nextInt(users) + 1;
+            long friendId = random.nextInt(users) + 1;
+            if(userId == friendId){
+                continue;
+            }
+            if(friends.get(userId).remove(friendId)){
+                friends.get(friendId).remove(userId);
+            } else{
+                friends.get(userId).add(friendId);
+                friends.get(friendId).add(userId);
+            }
+            friendGraphIndex.onFriendshipChanged(new FriendshipChangedEvent(userId, friendId));
+        }
+
+        long[] excludedIds = {3, 30, 300};
+        for(long userId = 1; userId <= users; userId++){
+            for(int limit : new int[]{10, FriendGraphIndex.TOP_CANDIDATES, users}){
+                assertEquals(countMutualFriends(friends, userId, excludedIds, limit), friendGraphIndex.findMutualFriendCounts(userId, excludedIds, limit));
+            }
+        }
+    }
+
+    @Test
+    void deletedUsersLeaveTheGraph() {
+        friendGraphIndex.onAccountDeletionRequested(new AccountDeletionRequestedEvent(5L));
+
+        assertArrayEquals(NONE, friendGraphIndex.getFriendIds(5));
+        assertArrayEquals(new long[]{1, 3, 6}, friendGraphIndex.getFriendIds(2));
+        assertEquals(List.of(
+                new FriendGraphIndex.MutualFriendCount(6, 2),
+                new FriendGraphIndex.MutualFriendCount(7, 1)
+        ), friendGraphIndex.findMutualFriendCounts(1, NONE, 10));
+    }
+
+    // One friendships row per pair, read once from the side of user_a and once from the side of user_b
+    private static void mockFriendships(UserRepository userRepository, FriendshipRepository friendshipRepository, long maxId, List<long[]> pairs) {
+        List<FriendshipDto> userARows = new ArrayList<>();
+        List<FriendshipDto> userBRows = new ArrayList<>();
+        for(long[] pair : pairs){
+            userARows.add(new FriendshipDto(pair[0], pair[1]));
+            userBRows.add(new FriendshipDto(pair[1], pair[0]));
+        }
+        when(userRepository.findMaxId()).thenReturn(maxId);
+        when(friendshipRepository.findFriendshipsByUserARange(1L, 1000L)).thenReturn(userARows);
+        when(friendshipRepository.findFriendshipsByUserBRange(1L, 1000L)).thenReturn(userBRows);
+    }
+
+    private static List<FriendGraphIndex.MutualFriendCount> countMutualFriends(Map<Long, Set<Long>> friends, long userId, long[] excludedIds, int limit) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for(long friendId : friends.get(userId)){
+            for(long candidateId : friends.get(friendId)){
+                if(candidateId != userId && !friends.get(userId).contains(candidateId) && Arrays.binarySearch(excludedIds, candidateId) < 0){
+                    counts.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        }
+        return counts.entrySet().stream()
+                .map(count -> new FriendGraphIndex.MutualFriendCount(count.getKey(), count.getValue()))
+                .sorted(Comparator.comparingInt(FriendGraphIndex.MutualFriendCount::mutualFriendsCount).thenComparingLong(FriendGraphIndex.MutualFriendCount::userId).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private static Set<Long> toSet(long[] ids) {
+        Set<Long> set = new TreeSet<>();
+        for(long id : ids){
+            set.add(id);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,122 @@
+package com.mainak.philia.service.migration;
+
+import com.mainak.philia.model.Comment;
+import com.mainak.philia.model.Post;
+import com.mainak.philia.model.User;
+import com.mainak.philia.repository.CommentRepository;
+import com.mainak.philia.repository.PostRepository;
+import com.mainak.philia.repository.UserRepository;
+import com.mainak.philia.service.EngagementCounterBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// Runs the copy against the join tables as the baseline mapping created them, and as the later mapping with liked_at left them
+@DataJpaTest(properties = "spring.datasource.url=jdbc:h2:mem:legacylikes;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({LegacyLikeMigrationService.class, EngagementCounterBuffer.class})
+// Each copy batch commits on its own, as it does at startup
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LegacyLikeMigrationServiceTests {
+
+    @Autowired
+    private LegacyLikeMigrationService legacyLikeMigrationService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User liker;
+    private Post post;
+    private Comment comment;
+
+    @BeforeEach
+    void setUp() {
+        liker = userRepository.save(newUser());
+        post = new Post();
+        post.setCaption("Liked post");
+        post.setUser(liker);
+        post = postRepository.save(post);
+
+        comment = new Comment();
+        comment.setContent("Liked comment");
+        comment.setUser(liker);
+        comment.setPost(post);
+        comment = commentRepository.save(comment);
+    }
+
+    @AfterEach
+    void dropLegacyTables() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS post_likes");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS comment_likes");
+    }
+
+    @Test
+    void likesWithoutLikedAtAreCopiedAtMigrationTime() {
+        jdbcTemplate.execute("CREATE TABLE post_likes (post_id BIGINT NOT NULL, user_id BIGINT NOT NULL, PRIMARY KEY (post_id, user_id))");
+        jdbcTemplate.execute("CREATE TABLE comment_likes (comment_id BIGINT NOT NULL, user_id BIGINT NOT NULL, PRIMARY KEY (comment_id, user_id))");
+        jdbcTemplate.update("INSERT INTO post_likes VALUES (?, ?)", post.getId(), liker.getId());
+        jdbcTemplate.update("INSERT INTO comment_likes VALUES (?, ?)", comment.getId(), liker.getId());
+
+        legacyLikeMigrationService.migrate();
+
+        assertNotNull(reactedAt(0, post.getId()));
+        assertNotNull(reactedAt(1, comment.getId()));
+        assertEquals(1, likeBar(0, post.getId()));
+        assertEquals(1, likeBar(1, comment.getId()));
+    }
+
+    @Test
+    void likedAtIsKeptWhenTheColumnExists() {
+        LocalDateTime likedAt = LocalDateTime.of(2020, 1, 2, 3, 4, 5);
+        jdbcTemplate.execute("CREATE TABLE post_likes (post_id BIGINT NOT NULL, user_id BIGINT NOT NULL, liked_at TIMESTAMP, PRIMARY KEY (post_id, user_id))");
+        jdbcTemplate.execute("CREATE TABLE comment_likes (comment_id BIGINT NOT NULL, user_id BIGINT NOT NULL, liked_at TIMESTAMP, PRIMARY KEY (comment_id, user_id))");
+        jdbcTemplate.update("INSERT INTO post_likes VALUES (?, ?, ?)", post.getId(), liker.getId(), Timestamp.valueOf(likedAt));
+        jdbcTemplate.update("INSERT INTO comment_likes VALUES (?, ?, ?)", comment.getId(), liker.getId(), Timestamp.valueOf(likedAt));
+
+        legacyLikeMigrationService.migrate();
+
+        assertEquals(likedAt, reactedAt(0, post.getId()));
+        assertEquals(likedAt, reactedAt(1, comment.getId()));
+    }
+
+    private LocalDateTime reactedAt(int targetType, Long targetId) {
+        return jdbcTemplate.queryForObject("SELECT reacted_at FROM reactions WHERE target_type = ? AND target_id = ? AND user_id = ?",
+                LocalDateTime.class, targetType, targetId, liker.getId());
+    }
+
+    private long likeBar(int targetType, Long targetId) {
+        return jdbcTemplate.queryForObject("SELECT reactions_count FROM reaction_counts WHERE target_type = ? AND target_id = ? AND reaction = 0",
+                Long.class, targetType, targetId);
+    }
+
+    private User newUser() {
+        User user = new User();
+        user.setEmail(UUID.randomUUID() + "@philia.com");
+        user.setFirstName("Liker");
+        user.setLastName("Philia");
+        return user;
+    }
+}